@@ -0,0 +1,314 @@
+package com.waes.phillips.products.load;
+
+import com.waes.phillips.products.PhillipsProductApplication;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the real controller at a fixed request rate while the supply chain, played by {@link SupplyChainStub},
+ * goes through phases of failures. Reports per phase the answers by status, the latency percentiles and throughput
+ * of the successful ones, the requests reaching the supplier, the retries, and the transitions of the
+ * {@code product_downstream} circuit breaker.
+ * <p>
+ * Load is open loop: requests are sent on schedule whatever the answers take, and latency is measured from the
+ * time a request was due, so a slow application is not hidden by a slower client. Reads are downstream catalog
+ * GETs, which go through the circuit breaker, writes are downstream product updates. Snapshots of the catalog are
+ * off by default so that reads reach the supplier.
+ * <p>
+ * Not run by the build, arguments are {@code key=value}. Keys with a dot are application properties, e.g.
+ * {@code cb.failure.rate.threshold=50 retry.maxAttempts=2}, the others are:
+ * <ul>
+ * <li>{@code rate} requests per second, 50</li>
+ * <li>{@code phaseSeconds} duration of each phase, 15</li>
+ * <li>{@code phases} comma separated phases among healthy, errors, stalls and outage, healthy,errors,stalls,outage,healthy</li>
+ * <li>{@code readPercent} share of reads, the rest are writes, 80</li>
+ * <li>{@code latency} fixed or exponential, exponential; {@code latencyMillis} latency or its mean, 20</li>
+ * <li>{@code tailPercent} and {@code tailMillis} share of the answers in the tail and their latency, 1 and 1000</li>
+ * <li>{@code errorPercent} share of 503 answers in the errors phase, 50</li>
+ * <li>{@code stallPercent} and {@code stallMillis} share of stalled requests in the stalls phase and how long they
+ * are held, 20 and 15000</li>
+ * <li>{@code timeoutSeconds} client timeout, 30</li>
+ * <li>{@code snapshots} whether the catalog snapshots stay on, false</li>
+ * </ul>
+ */
+public class SupplyChainLoadHarness {
+
+    private static final String RESOURCE_PATH = "/test/supply-chain";
+    private static final String CIRCUIT_BREAKER = "product_downstream";
+    private static final int PRODUCTS = 100;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> properties = new ArrayList<>(Arrays.asList("server.port=0", "spring.cloud.gcp.core.enabled=false",
+                "spring.cloud.gcp.config.enabled=false", "logging.level.root=WARN",
+                "logging.level.com.waes.phillips.products=OFF"));
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            if (pair[0].contains(".")) {
+                properties.add(arg);
+            } else {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int rate = Integer.parseInt(options.getOrDefault("rate", "50"));
+        int phaseSeconds = Integer.parseInt(options.getOrDefault("phaseSeconds", "15"));
+        List<String> phases = Arrays.asList(options.getOrDefault("phases", "healthy,errors,stalls,outage,healthy").split(","));
+        int readPercent = Integer.parseInt(options.getOrDefault("readPercent", "80"));
+        SupplyChainStub.Behaviour healthy = SupplyChainStub.Behaviour.healthy(
+                SupplyChainStub.Distribution.valueOf(options.getOrDefault("latency", "exponential").toUpperCase()),
+                Long.parseLong(options.getOrDefault("latencyMillis", "20")),
+                Integer.parseInt(options.getOrDefault("tailPercent", "1")),
+                Long.parseLong(options.getOrDefault("tailMillis", "1000")));
+        int errorPercent = Integer.parseInt(options.getOrDefault("errorPercent", "50"));
+        int stallPercent = Integer.parseInt(options.getOrDefault("stallPercent", "20"));
+        long stallMillis = Long.parseLong(options.getOrDefault("stallMillis", "15000"));
+        Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeoutSeconds", "30")));
+        if (!Boolean.parseBoolean(options.getOrDefault("snapshots", "false"))) {
+            properties.add(0, "supply.chain.snapshot.max.entries=0");
+        }
+
+        try (SupplyChainStub stub = new SupplyChainStub(RESOURCE_PATH, PRODUCTS)) {
+            properties.add(0, "supply.chain.url=" + stub.url());
+            properties.add(0, "supply.chain.resource.path=" + RESOURCE_PATH);
+            // command line arguments, so they win over application.properties
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(PhillipsProductApplication.class)
+                    .run(properties.stream().map(property -> "--" + property).toArray(String[]::new));
+            try {
+                String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/supply-chain";
+                CircuitBreaker circuitBreaker = context.getBean(CircuitBreakerRegistry.class).circuitBreaker(CIRCUIT_BREAKER);
+                MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+                long start = System.nanoTime();
+                ConcurrentLinkedQueue<String> transitions = new ConcurrentLinkedQueue<>();
+                AtomicLong notPermitted = new AtomicLong();
+                circuitBreaker.getEventPublisher()
+                        .onStateTransition(event -> transitions.add(String.format("%6.1fs %s",
+                                (System.nanoTime() - start) / 1e9, event.getStateTransition())))
+                        .onCallNotPermitted(event -> notPermitted.incrementAndGet());
+
+                System.out.printf("%d requests/s, %d%% reads, %ds phases, stub %s%n", rate, readPercent, phaseSeconds, healthy);
+                Load load = new Load(baseUrl, rate, readPercent, timeout);
+                List<PhaseResult> results = new ArrayList<>();
+                for (String phase : phases) {
+                    SupplyChainStub.Behaviour behaviour = behaviour(phase.trim(), healthy, errorPercent, stallPercent, stallMillis);
+                    stub.setBehaviour(behaviour);
+                    PhaseResult result = new PhaseResult(phase.trim(), phaseSeconds, stub.requests(),
+                            meterRegistry.counter(HttpUtils.RETRIES_METRIC).count(),
+                            meterRegistry.counter(HttpUtils.RETRY_BUDGET_EXHAUSTED_METRIC).count(),
+                            notPermitted.get());
+                    load.run(result, Duration.ofSeconds(phaseSeconds));
+                    result.end(stub.requests(), meterRegistry.counter(HttpUtils.RETRIES_METRIC).count(),
+                            meterRegistry.counter(HttpUtils.RETRY_BUDGET_EXHAUSTED_METRIC).count(),
+                            notPermitted.get(), circuitBreaker.getState());
+                    results.add(result);
+                }
+                load.drain(timeout.plusSeconds(5));
+                load.close();
+
+                System.out.printf("%-8s %6s %6s %6s %6s %6s %8s %7s %7s %7s %7s %7s %7s %9s %-9s%n", "phase", "sent",
+                        "2xx", "4xx", "5xx", "failed", "ok/s", "p50ms", "p99ms", "p999ms", "stub", "retries",
+                        "budget", "rejected", "breaker");
+                results.forEach(result -> System.out.println(result.report()));
+                System.out.println("circuit breaker transitions:");
+                transitions.forEach(transition -> System.out.println("  " + transition));
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static SupplyChainStub.Behaviour behaviour(String phase, SupplyChainStub.Behaviour healthy, int errorPercent,
+                                                       int stallPercent, long stallMillis) {
+        switch (phase) {
+            case "healthy":
+                return healthy;
+            case "errors":
+                return healthy.withErrors(errorPercent);
+            case "stalls":
+                return healthy.withStalls(stallPercent, stallMillis);
+            case "outage":
+                return healthy.withErrors(100);
+            default:
+                throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+    }
+
+    /**
+     * Sends requests on schedule and records each answer in the result of the phase it was sent in.
+     */
+    private static class Load implements AutoCloseable {
+        private final String baseUrl;
+        private final long periodNanos;
+        private final int readPercent;
+        private final Duration timeout;
+        private final ExecutorService clientExecutor;
+        private final HttpClient client;
+        private final ScheduledExecutorService scheduler;
+        // one party per request in flight, arrived when it completes
+        private final Phaser inFlight = new Phaser(1);
+
+        private Load(String baseUrl, int rate, int readPercent, Duration timeout) {
+            this.baseUrl = baseUrl;
+            this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            this.readPercent = readPercent;
+            this.timeout = timeout;
+            this.clientExecutor = Executors.newCachedThreadPool(daemon("load-client"));
+            this.client = HttpClient.newBuilder().executor(clientExecutor).connectTimeout(Duration.ofSeconds(5)).build();
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("load-scheduler"));
+        }
+
+        private void run(PhaseResult result, Duration duration) throws InterruptedException {
+            long start = System.nanoTime();
+            AtomicLong ticks = new AtomicLong();
+            ScheduledFuture<?> sender = scheduler.scheduleAtFixedRate(
+                    () -> send(result, start + ticks.getAndIncrement() * periodNanos), 0, periodNanos, TimeUnit.NANOSECONDS);
+            Thread.sleep(duration.toMillis());
+            sender.cancel(false);
+        }
+
+        private void send(PhaseResult result, long dueNanos) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            HttpRequest request = random.nextInt(100) < readPercent
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "?downstream=true")).timeout(timeout).GET().build()
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/product/p" + random.nextInt(PRODUCTS) + "?downstream=true"))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Load\",\"price\":1.99,\"quantity\":1}"))
+                    .build();
+            result.sent();
+            inFlight.register();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+                result.record(System.nanoTime() - dueNanos, e == null ? response.statusCode() : 0);
+                inFlight.arriveAndDeregister();
+            });
+        }
+
+        /**
+         * Waits for the requests still in flight, at most for the given time.
+         */
+        private void drain(Duration maxWait) {
+            try {
+                inFlight.awaitAdvanceInterruptibly(inFlight.arrive(), maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (TimeoutException e) {
+                System.out.printf("%d requests still in flight after %ds%n", inFlight.getUnarrivedParties(), maxWait.getSeconds());
+            }
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            clientExecutor.shutdownNow();
+        }
+
+        private static ThreadFactory daemon(String name) {
+            return runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * Answers of the requests sent during one phase, and the counters of the application over the phase.
+     */
+    private static class PhaseResult {
+        private final String name;
+        private final int seconds;
+        private final long stubRequestsAtStart;
+        private final double retriesAtStart;
+        private final double budgetExhaustedAtStart;
+        private final long notPermittedAtStart;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong[] byStatusClass = {new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        private final List<Long> okLatencies = new ArrayList<>();
+        private long stubRequests;
+        private double retries;
+        private double budgetExhausted;
+        private long notPermitted;
+        private CircuitBreaker.State breakerState;
+
+        private PhaseResult(String name, int seconds, long stubRequests, double retries, double budgetExhausted, long notPermitted) {
+            this.name = name;
+            this.seconds = seconds;
+            this.stubRequestsAtStart = stubRequests;
+            this.retriesAtStart = retries;
+            this.budgetExhaustedAtStart = budgetExhausted;
+            this.notPermittedAtStart = notPermitted;
+        }
+
+        private void sent() {
+            sent.incrementAndGet();
+        }
+
+        /**
+         * @param status status of the answer, 0 when the request failed or timed out on the client
+         */
+        private void record(long latencyNanos, int status) {
+            // failed, 2xx, 4xx and 5xx
+            int statusClass = status == 0 ? 0 : status < 300 ? 1 : status < 500 ? 2 : 3;
+            byStatusClass[statusClass].incrementAndGet();
+            if (statusClass == 1) {
+                synchronized (okLatencies) {
+                    okLatencies.add(latencyNanos);
+                }
+            }
+        }
+
+        private void end(long stubRequests, double retries, double budgetExhausted, long notPermitted, CircuitBreaker.State breakerState) {
+            this.stubRequests = stubRequests - stubRequestsAtStart;
+            this.retries = retries - retriesAtStart;
+            this.budgetExhausted = budgetExhausted - budgetExhaustedAtStart;
+            this.notPermitted = notPermitted - notPermittedAtStart;
+            this.breakerState = breakerState;
+        }
+
+        private String report() {
+            long[] latencies;
+            synchronized (okLatencies) {
+                latencies = okLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            return String.format("%-8s %6d %6d %6d %6d %6d %8.1f %7s %7s %7s %7d %7.0f %7.0f %9d %-9s", name, sent.get(),
+                    byStatusClass[1].get(), byStatusClass[2].get(), byStatusClass[3].get(), byStatusClass[0].get(),
+                    (double) byStatusClass[1].get() / seconds, percentile(latencies, 500), percentile(latencies, 990),
+                    percentile(latencies, 999), stubRequests, retries, budgetExhausted, notPermitted, breakerState);
+        }
+
+        private static String percentile(long[] sorted, int perMille) {
+            if (sorted.length == 0) {
+                return "-";
+            }
+            return String.valueOf(TimeUnit.NANOSECONDS.toMillis(sorted[(int) ((long) (sorted.length - 1) * perMille / 1000)]));
+        }
+    }
+}
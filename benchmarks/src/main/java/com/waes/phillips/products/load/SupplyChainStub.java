@@ -0,0 +1,180 @@
+package com.waes.phillips.products.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the supply chain API on a local port. Every answer waits for a latency drawn from the current
+ * {@link Behaviour}, and a share of them fail with a 503 or stall for a long time first. The behaviour can be
+ * swapped while requests are in flight, a request keeps the behaviour it arrived with.
+ */
+public class SupplyChainStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] catalog;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile Behaviour behaviour = Behaviour.healthy(Distribution.FIXED, 0, 0, 0);
+
+    public SupplyChainStub(String resourcePath, int products) throws IOException {
+        StringBuilder body = new StringBuilder("{\"bundle\":[");
+        for (int i = 0; i < products; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append(String.format("{\"id\":\"p%d\",\"name\":\"Product %d\",\"price\":%d.99,\"quantity\":%d}", i, i, i % 100, i % 500));
+        }
+        catalog = body.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "supply-chain-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        server.createContext(resourcePath, exchange -> answer(exchange, resourcePath));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public void setBehaviour(Behaviour behaviour) {
+        this.behaviour = behaviour;
+    }
+
+    /**
+     * @return requests received since the stub started, retries included
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void answer(HttpExchange exchange, String resourcePath) throws IOException {
+        requests.incrementAndGet();
+        Behaviour current = behaviour;
+        byte[] body = readBody(exchange);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            if (random.nextInt(100) < current.stallPercent) {
+                Thread.sleep(current.stallMillis);
+            } else {
+                Thread.sleep(current.latency(random));
+            }
+            if (random.nextInt(100) < current.errorPercent) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if ("DELETE".equals(method)) {
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            // a write answers with the product it was sent, a read of the resource with the whole catalog
+            byte[] answer = "GET".equals(method) && path.length() <= resourcePath.length() + 1 ? catalog : body;
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, answer.length == 0 ? -1 : answer.length);
+            exchange.getResponseBody().write(answer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the client gave up on the request, e.g. its timeout expired during a stall
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    public enum Distribution {
+        /**
+         * Every answer takes the latency.
+         */
+        FIXED,
+        /**
+         * Answers take an exponentially distributed time whose mean is the latency.
+         */
+        EXPONENTIAL
+    }
+
+    /**
+     * How the stub answers: a latency distribution with a tail, plus shares of 503 errors and of stalls.
+     */
+    public static class Behaviour {
+        private final Distribution distribution;
+        private final long latencyMillis;
+        private final int tailPercent;
+        private final long tailMillis;
+        private final int errorPercent;
+        private final int stallPercent;
+        private final long stallMillis;
+
+        /**
+         * @param distribution  distribution of the latency of the answers outside the tail
+         * @param latencyMillis latency, or its mean for {@link Distribution#EXPONENTIAL}
+         * @param tailPercent   share of the answers taking {@code tailMillis} instead
+         * @param tailMillis    latency of the tail
+         * @param errorPercent  share of the answers that are a 503
+         * @param stallPercent  share of the requests held for {@code stallMillis} before they are answered
+         * @param stallMillis   duration of a stall, usually past the timeouts of the caller
+         */
+        public Behaviour(Distribution distribution, long latencyMillis, int tailPercent, long tailMillis,
+                         int errorPercent, int stallPercent, long stallMillis) {
+            this.distribution = distribution;
+            this.latencyMillis = latencyMillis;
+            this.tailPercent = tailPercent;
+            this.tailMillis = tailMillis;
+            this.errorPercent = errorPercent;
+            this.stallPercent = stallPercent;
+            this.stallMillis = stallMillis;
+        }
+
+        public static Behaviour healthy(Distribution distribution, long latencyMillis, int tailPercent, long tailMillis) {
+            return new Behaviour(distribution, latencyMillis, tailPercent, tailMillis, 0, 0, 0);
+        }
+
+        public Behaviour withErrors(int errorPercent) {
+            return new Behaviour(distribution, latencyMillis, tailPercent, tailMillis, errorPercent, stallPercent, stallMillis);
+        }
+
+        public Behaviour withStalls(int stallPercent, long stallMillis) {
+            return new Behaviour(distribution, latencyMillis, tailPercent, tailMillis, errorPercent, stallPercent, stallMillis);
+        }
+
+        private long latency(ThreadLocalRandom random) {
+            if (random.nextInt(100) < tailPercent) {
+                return tailMillis;
+            }
+            if (distribution == Distribution.EXPONENTIAL) {
+                return (long) (-latencyMillis * Math.log(1 - random.nextDouble()));
+            }
+            return latencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %dms, %d%% at %dms, %d%% errors, %d%% stalls of %dms", distribution, latencyMillis,
+                    tailPercent, tailMillis, errorPercent, stallPercent, stallMillis);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.waes.phillips.products.model;
+
+import com.waes.phillips.products.utils.ProductUtils;
+import com.waes.phillips.products.utils.UuidV7;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Products shared by the benchmarks, with the shape of real catalog entries.
+ */
+public final class BenchmarkProducts {
+
+    private BenchmarkProducts() {
+    }
+
+    public static ProductDTO product(int index) {
+        return ProductDTO.builder()
+                .id(UuidV7.next().toString())
+                .name("Product " + index)
+                .price(BigDecimal.valueOf(100 + index % 10000, 2))
+                .quantity(index % 500)
+                .version(0L)
+                .build();
+    }
+
+    public static ProductsDTO page(int size) {
+        List<ProductDTO> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(product(i));
+        }
+        return ProductsDTO.builder()
+                .bundle(products)
+                .next(ProductUtils.encodeCursor(products.get(size - 1).getId()))
+                .build();
+    }
+}
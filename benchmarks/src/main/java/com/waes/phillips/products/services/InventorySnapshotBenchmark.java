@@ -0,0 +1,55 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.model.InventoryStatsDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inventory aggregates of {@link InventorySnapshot}, the time of GET /supply-chain/inventory/stats without the web
+ * layer. The snapshot is filled directly, it is not loaded from the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventorySnapshotBenchmark {
+
+    private static final List<BigDecimal> PRICE_BUCKETS = Arrays.asList(BigDecimal.valueOf(10), BigDecimal.valueOf(50),
+            BigDecimal.valueOf(100), BigDecimal.valueOf(500));
+
+    @Param({"100000", "1000000"})
+    private int products;
+
+    private InventorySnapshot inventorySnapshot;
+
+    @Setup
+    public void setUp() {
+        inventorySnapshot = new InventorySnapshot(null, null);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < products; i++) {
+            inventorySnapshot.put("product-" + i, BigDecimal.valueOf(random.nextInt(100_000), 2), random.nextInt(1000));
+        }
+    }
+
+    @Benchmark
+    public InventoryStatsDTO stats() {
+        return inventorySnapshot.stats(10, PRICE_BUCKETS);
+    }
+}
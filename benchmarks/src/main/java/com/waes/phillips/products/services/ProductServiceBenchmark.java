@@ -0,0 +1,99 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.PhillipsProductApplication;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local CRUD of {@link ProductServiceImpl} against the embedded H2 database, in the whole application context
+ * listening on a random port. The catalog holds {@value #CATALOG_SIZE} products. The product cache is turned off, so reads
+ * always hit the database; every call goes through the proxy, in its transaction, like a request would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    private static final int CATALOG_SIZE = 1000;
+
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+    private List<String> ids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(PhillipsProductApplication.class)
+                .properties("server.port=0", "spring.cloud.gcp.core.enabled=false", "spring.cloud.gcp.config.enabled=false",
+                        "logging.level.root=WARN")
+                // an argument, as application.properties overrides the default properties above
+                .run("--spring.cache.type=none");
+        productService = context.getBean(ProductService.class);
+
+        List<ProductDTO> products = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            products.add(ProductDTO.builder().name("Product " + i).price(BigDecimal.valueOf(100 + i, 2)).quantity(i % 500).build());
+        }
+        productService.saveProducts(products);
+        ids = new ArrayList<>(CATALOG_SIZE);
+        productService.getProducts(false, CATALOG_SIZE, null).getBundle().forEach(product -> ids.add(product.getId()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<ProductDTO> getProduct() {
+        return productService.getProduct(nextId());
+    }
+
+    @Benchmark
+    public ProductsDTO getPage() {
+        return productService.getProducts(false, 100, null);
+    }
+
+    @Benchmark
+    public Optional<ProductDTO> updateProduct() {
+        String id = nextId();
+        return productService.updateProduct(ProductDTO.builder().name("Renamed " + id).quantity(7).build(), id, false);
+    }
+
+    /**
+     * Save and delete together, so the catalog keeps its size however long the benchmark runs.
+     */
+    @Benchmark
+    public ProductDTO saveAndDeleteProduct() {
+        ProductDTO saved = productService.saveProduct(ProductDTO.builder().name("Transient").quantity(1).build(), false);
+        productService.deleteProduct(saved.getId(), false);
+        return saved;
+    }
+
+    private String nextId() {
+        next = (next + 1) % ids.size();
+        return ids.get(next);
+    }
+}
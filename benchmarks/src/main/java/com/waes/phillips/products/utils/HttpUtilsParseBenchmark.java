@@ -0,0 +1,64 @@
+package com.waes.phillips.products.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.model.BenchmarkProducts;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import io.github.resilience4j.retry.Retry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of supply chain responses holding {@code size} products: whole body from bytes, whole body from the
+ * response stream, and element by element from the stream like the catalog sync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpUtilsParseBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private HttpUtils httpUtils;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        httpUtils = new HttpUtils(mapper, Retry.ofDefaults("benchmark"), null);
+        body = mapper.writeValueAsBytes(BenchmarkProducts.page(size));
+    }
+
+    @Benchmark
+    public ProductsDTO parseBytes() {
+        return httpUtils.parseResponseBody(body, ProductsDTO.class);
+    }
+
+    @Benchmark
+    public ProductsDTO parseStream() {
+        return httpUtils.parseResponseBody(new ByteArrayInputStream(body), ProductsDTO.class);
+    }
+
+    @Benchmark
+    public long parseElements(Blackhole blackhole) {
+        return httpUtils.parseResponseElements(new ByteArrayInputStream(body), "bundle", ProductDTO.class, blackhole::consume);
+    }
+}
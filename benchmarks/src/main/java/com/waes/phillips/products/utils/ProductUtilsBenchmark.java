@@ -0,0 +1,61 @@
+package com.waes.phillips.products.utils;
+
+import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.model.ProductDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between {@link Product} and {@link ProductDTO}, and the page cursors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductUtilsBenchmark {
+
+    private Product product;
+    private ProductDTO productDTO;
+    private String cursor;
+
+    @Setup
+    public void setUp() {
+        String id = UuidV7.next().toString();
+        product = Product.builder().id(id).name("Desk lamp").price(new BigDecimal("19.99")).quantity(42).version(3L).build();
+        productDTO = ProductUtils.parseProductEntityToDTO(product);
+        cursor = ProductUtils.encodeCursor(id);
+    }
+
+    @Benchmark
+    public ProductDTO entityToDTO() {
+        return ProductUtils.parseProductEntityToDTO(product);
+    }
+
+    @Benchmark
+    public Product dtoToEntity() {
+        return ProductUtils.parseProductDTOToEntity(productDTO);
+    }
+
+    @Benchmark
+    public String encodeCursor() {
+        return ProductUtils.encodeCursor(product.getId());
+    }
+
+    @Benchmark
+    public String decodeCursor() {
+        return ProductUtils.decodeCursor(cursor);
+    }
+}
@@ -0,0 +1,110 @@
+package com.waes.phillips.products.config;
+
+import com.waes.phillips.products.utils.ConnectionCountingSSLContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+@Slf4j
+public class HttpClientConfiguration {
+
+    public static final String SUPPLY_CHAIN_HTTP_EXECUTOR = "supplyChainHttpExecutor";
+    public static final String SUPPLY_CHAIN_HTTP_METRIC = "supply.chain.http";
+
+    private static final String KEEPALIVE_TIMEOUT_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String CONNECTION_POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+
+    /**
+     * Fixed size executor for the client's response handling, or the virtual thread executor when that mode is
+     * enabled. Its queue depth ({@code executor.queued}) and activity are published as the {@code executor.*}
+     * metrics tagged {@code name=supply.chain.http}.
+     *
+     * @param threads               number of threads
+     * @param virtualThreadExecutor present only when {@link VirtualThreadConfiguration} is active
+     * @param meterRegistry         registry of the executor metrics
+     * @return {@link ExecutorService}
+     */
+    @Bean(name = SUPPLY_CHAIN_HTTP_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService supplyChainHttpExecutor(@Value("${supply.chain.http.executor.threads}") int threads,
+                                                   @Qualifier(VirtualThreadConfiguration.VIRTUAL_THREAD_EXECUTOR)
+                                                           ObjectProvider<ExecutorService> virtualThreadExecutor,
+                                                   MeterRegistry meterRegistry) {
+        ExecutorService executor = virtualThreadExecutor.getIfAvailable(() -> fixedExecutor(threads));
+        return ExecutorServiceMetrics.monitor(meterRegistry, executor, SUPPLY_CHAIN_HTTP_METRIC);
+    }
+
+    /**
+     * Client used for the supply chain API. Prefers HTTP/2 so concurrent requests share one multiplexed
+     * connection, bounds connection setup and keeps idle HTTP/1.1 connections around to skip new handshakes.
+     * <p>
+     * Keep alive and pool size are JDK wide settings read once, when the first client is built, so values
+     * given with -D on the command line win over the properties.
+     *
+     * @param version                  preferred protocol, falls back to HTTP/1.1 when the server does not speak HTTP/2
+     * @param connectTimeoutMillis     time allowed to open a connection
+     * @param keepAliveSeconds         time an idle connection stays in the pool
+     * @param keepAlivePoolSize        idle HTTP/1.1 connections kept in the pool, 0 for no limit
+     * @param supplyChainHttpExecutor  executor of the client
+     * @param meterRegistry            registry of the connection metrics
+     * @return {@link HttpClient}
+     */
+    @Bean
+    public HttpClient supplyChainHttpClient(@Value("${supply.chain.http.version}") HttpClient.Version version,
+                                            @Value("${supply.chain.http.connect.timeout.millis}") long connectTimeoutMillis,
+                                            @Value("${supply.chain.http.keepalive.seconds}") long keepAliveSeconds,
+                                            @Value("${supply.chain.http.keepalive.pool.size}") int keepAlivePoolSize,
+                                            @Qualifier(SUPPLY_CHAIN_HTTP_EXECUTOR) ExecutorService supplyChainHttpExecutor,
+                                            MeterRegistry meterRegistry) throws NoSuchAlgorithmException {
+        setIfAbsent(KEEPALIVE_TIMEOUT_PROPERTY, keepAliveSeconds);
+        setIfAbsent(CONNECTION_POOL_SIZE_PROPERTY, keepAlivePoolSize);
+        log.info("Supply chain client using {} with connect timeout {}ms", version, connectTimeoutMillis);
+
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(supplyChainHttpExecutor)
+                .sslContext(new ConnectionCountingSSLContext(SSLContext.getDefault(), meterRegistry))
+                .build();
+    }
+
+    /**
+     * Queues tasks without a bound rather than rejecting them or running them on the submitting thread: a rejected
+     * task would leave the response future of the client uncompleted, and the submitting thread may be the
+     * client's selector, which would stop serving every other exchange meanwhile. The bulkheads already bound
+     * the requests in flight, and so the queue.
+     */
+    private ExecutorService fixedExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "supply-chain-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void setIfAbsent(String property, long value) {
+        if (Objects.isNull(System.getProperty(property))) {
+            System.setProperty(property, String.valueOf(value));
+        }
+    }
+}
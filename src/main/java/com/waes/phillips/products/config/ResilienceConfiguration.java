@@ -1,8 +1,12 @@
 package com.waes.phillips.products.config;
 
+import com.waes.phillips.products.exception.SupplyChainFailurePredicate;
+import com.waes.phillips.products.utils.HttpUtils;
+import com.waes.phillips.products.utils.RetryBudget;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
 import io.github.resilience4j.core.registry.EntryAddedEvent;
 import io.github.resilience4j.core.registry.EntryRemovedEvent;
 import io.github.resilience4j.core.registry.EntryReplacedEvent;
@@ -11,12 +15,15 @@ import io.github.resilience4j.retry.Retry;
 import io.github.resilience4j.retry.RetryConfig;
 import io.github.resilience4j.retry.RetryRegistry;
 import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static java.time.temporal.ChronoUnit.SECONDS;
 
@@ -25,19 +32,14 @@ import static java.time.temporal.ChronoUnit.SECONDS;
 public class ResilienceConfiguration {
 
     private final CircuitBreaker circuitBreaker;
-    private final Retry retry;
 
     public ResilienceConfiguration(@Value("${cb.sliding.window.size}") int slidingWindowSize,
                                    @Value("${cb.failure.rate.threshold}") float failureRateThreshold,
                                    @Value("${cb.wait.duration.in.open.state}") long waitDurationInOpenState,
                                    @Value("${cb.permitted.number.of.calls.in.half.open.state}") int permittedNumberOfCallsInHalfOpenState,
-                                   @Value("${cb.name}") String cbName,
-                                   @Value("${retry.maxAttempts}") int retryMaxAttempts,
-                                   @Value("${retry.waitDuration}") long retryWaitDuration,
-                                   @Value("${retry.name}") String retryName) {
+                                   @Value("${cb.name}") String cbName) {
 
         circuitBreaker = instantiateCircuitBreaker(slidingWindowSize, failureRateThreshold, waitDurationInOpenState, permittedNumberOfCallsInHalfOpenState, cbName);
-        retry = instantiateRetry(retryMaxAttempts, retryWaitDuration, retryName);
     }
 
     /**
@@ -68,18 +70,30 @@ public class ResilienceConfiguration {
     }
 
     /**
-     * Instantiate the {@link Retry}.
+     * Instantiate the {@link Retry}. Waits grow exponentially from the initial wait up to the max wait and are
+     * randomized, so clients failing together do not retry together. Supplier failures are only retried while
+     * the retry budget has room.
      *
      * @param retryMaxAttempts
      * @param retryWaitDuration
+     * @param retryMultiplier
+     * @param retryRandomizationFactor
+     * @param retryMaxWaitDuration
      * @param retryName
+     * @param retryBudget
+     * @param meterRegistry
      * @return {@link Retry}
      */
-    private Retry instantiateRetry(int retryMaxAttempts, long retryWaitDuration, String retryName) {
+    private Retry instantiateRetry(int retryMaxAttempts, long retryWaitDuration, double retryMultiplier,
+                                   double retryRandomizationFactor, long retryMaxWaitDuration, String retryName,
+                                   RetryBudget retryBudget, MeterRegistry meterRegistry) {
         final Retry retry;
         RetryConfig retryConfig = RetryConfig.custom()
                 .maxAttempts(retryMaxAttempts)
-                .waitDuration(Duration.of(retryWaitDuration, SECONDS))
+                .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(Duration.of(retryWaitDuration, SECONDS),
+                        retryMultiplier, retryRandomizationFactor, Duration.of(retryMaxWaitDuration, SECONDS)))
+                .retryOnException(retryBudget.limit(new SupplyChainFailurePredicate(),
+                        meterRegistry.counter(HttpUtils.RETRY_BUDGET_EXHAUSTED_METRIC)))
                 .build();
 
         RetryRegistry retryRegistry = RetryRegistry.of(retryConfig);
@@ -88,14 +102,52 @@ public class ResilienceConfiguration {
     }
 
     /**
-     * Get a {@link Retry} bean.
+     * Get a {@link Retry} bean, the single retry of every downstream call.
      *
      * @return {@link Retry}
      */
     @Bean
-    public Retry retry() {
-        return retry;
+    public Retry retry(@Value("${retry.maxAttempts}") int retryMaxAttempts,
+                       @Value("${retry.waitDuration}") long retryWaitDuration,
+                       @Value("${retry.multiplier}") double retryMultiplier,
+                       @Value("${retry.randomizationFactor}") double retryRandomizationFactor,
+                       @Value("${retry.maxWaitDuration}") long retryMaxWaitDuration,
+                       @Value("${retry.name}") String retryName,
+                       RetryBudget retryBudget,
+                       MeterRegistry meterRegistry) {
+        return instantiateRetry(retryMaxAttempts, retryWaitDuration, retryMultiplier, retryRandomizationFactor,
+                retryMaxWaitDuration, retryName, retryBudget, meterRegistry);
+    }
+
+    /**
+     * Retry budget shared by every downstream operation.
+     *
+     * @param ratio retries allowed per request sent
+     * @param minRetriesPerSecond retries always allowed
+     * @param windowSeconds length of the sliding window
+     * @return {@link RetryBudget}
+     */
+    @Bean
+    public RetryBudget retryBudget(@Value("${retry.budget.ratio}") double ratio,
+                                   @Value("${retry.budget.min.per.second}") int minRetriesPerSecond,
+                                   @Value("${retry.budget.window.seconds}") int windowSeconds) {
+        return new RetryBudget(ratio, minRetriesPerSecond, windowSeconds);
     }
+
+    /**
+     * Scheduler used by asynchronous retries to wait between attempts without holding a thread.
+     *
+     * @return {@link ScheduledExecutorService}
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ScheduledExecutorService retryScheduler() {
+        return Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "supply-chain-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     @Bean
     public RegistryEventConsumer<CircuitBreaker> circuitBreakerEventConsumer() {
         return new RegistryEventConsumer<CircuitBreaker>() {
@@ -0,0 +1,59 @@
+package com.waes.phillips.products.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in execution mode running Tomcat request handling and the supply chain client on virtual threads, so
+ * blocking JPA and HTTP calls no longer hold a worker of a bounded pool. Needs a JDK with virtual threads
+ * (21 or newer) at runtime, the code keeps compiling for Java 11 by looking the executor up reflectively.
+ */
+@Configuration
+@ConditionalOnProperty(name = VirtualThreadConfiguration.VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+@Slf4j
+public class VirtualThreadConfiguration {
+
+    public static final String VIRTUAL_THREADS_PROPERTY = "spring.threads.virtual.enabled";
+    public static final String VIRTUAL_THREAD_EXECUTOR = "virtualThreadExecutor";
+
+    /**
+     * Executor starting a new virtual thread per task.
+     *
+     * @return {@link ExecutorService}
+     */
+    @Bean(name = VIRTUAL_THREAD_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.info("Running request handling and supply chain calls on virtual threads");
+            return executor;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(String.format("%s needs a JDK with virtual threads, running on %s",
+                    VIRTUAL_THREADS_PROPERTY, Runtime.version()), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Replaces the Tomcat worker pool, so {@code server.tomcat.threads.max} no longer caps concurrent requests.
+     *
+     * @param virtualThreadExecutor executor starting a virtual thread per request
+     * @return {@link TomcatProtocolHandlerCustomizer}
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+            @Qualifier(VIRTUAL_THREAD_EXECUTOR) ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+}
@@ -1,26 +1,60 @@
 package com.waes.phillips.products.controller;
 
 import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductSearchDTO;
 import com.waes.phillips.products.services.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
 @RequestMapping(path = "/supply-chain", produces = MediaType.APPLICATION_JSON_VALUE)
 public class ProductController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final String EXPORT_TIMEOUT_INTERCEPTOR = "exportTimeout";
+
     @Autowired
     private ProductService productService;
 
+    @Value("${supply.chain.export.timeout.millis}")
+    private long exportTimeoutMillis;
+
     @PutMapping(value = "/product",
             produces = { "application/json" },
             consumes = { "application/json" })
-    public ResponseEntity saveProduct(@RequestBody ProductDTO body, @RequestParam(value = "downstream",
+    public CompletableFuture<ResponseEntity> saveProduct(@RequestBody ProductDTO body, @RequestParam(value = "downstream",
             required = false, defaultValue = "false") Boolean downstream) {
-        return ResponseEntity.created(null).body(productService.saveProduct(body, downstream));
+        return productService.saveProductAsync(body, downstream)
+                .<ResponseEntity>thenApply(product -> ResponseEntity.created(null).body(product));
+    }
+
+    /**
+     * Creates many {@link ProductDTO} in chunked, JDBC batched transactions.
+     *
+     * @param body products to create
+     * @return id or error of every product, in request order
+     */
+    @PutMapping(value = "/products",
+            produces = { "application/json" },
+            consumes = { "application/json" })
+    public ResponseEntity saveProducts(@RequestBody List<ProductDTO> body) {
+        return ResponseEntity.ok(productService.saveProducts(body));
     }
 
     /**
@@ -31,10 +65,10 @@ public class ProductController {
      * @return
      */
     @DeleteMapping({"/product/{id}"})
-    public ResponseEntity<Void> deleteProduct(@PathVariable(value = "id") String id, @RequestParam(value = "downstream",
+    public CompletableFuture<ResponseEntity<Void>> deleteProduct(@PathVariable(value = "id") String id, @RequestParam(value = "downstream",
             required = false, defaultValue = "false") Boolean downstream) {
-        productService.deleteProduct(id, downstream);
-        return ResponseEntity.noContent().build();
+        return productService.deleteProductAsync(id, downstream)
+                .thenApply(deleted -> ResponseEntity.noContent().build());
     }
 
     @GetMapping(path = "/product/{id}")
@@ -42,17 +76,101 @@ public class ProductController {
         return ResponseEntity.ok(productService.getProduct(id));
     }
 
+    /**
+     * Lists the catalog one keyset page at a time.
+     *
+     * @param downstream indicates if the query should be made on an downstream service side
+     * @param limit page size, capped by the service, not allowed with {@code downstream}
+     * @param after cursor returned as {@code next} by the previous page, not allowed with {@code downstream}
+     * @return
+     */
     @GetMapping
-    public ResponseEntity getProducts(@RequestParam(value = "downstream", required = false, defaultValue = "false") Boolean downstream) {
-        return ResponseEntity.ok(productService.getProducts(downstream));
+    public CompletableFuture<ResponseEntity> getProducts(@RequestParam(value = "downstream", required = false, defaultValue = "false") Boolean downstream,
+                                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                                         @RequestParam(value = "after", required = false) String after) {
+        return productService.getProductsAsync(downstream, limit, after)
+                .<ResponseEntity>thenApply(products -> ResponseEntity.ok(products));
+    }
+
+    /**
+     * Searches the local catalog, every given filter must match.
+     *
+     * @param name start of the name, case sensitive
+     * @param minPrice lowest price, inclusive
+     * @param maxPrice highest price, inclusive
+     * @param quantityBelow only products with fewer units in stock
+     * @param limit page size, capped by the service
+     * @param after cursor returned as {@code next} by the previous page
+     * @return
+     */
+    @GetMapping(path = "/search")
+    public ResponseEntity searchProducts(@RequestParam(value = "name", required = false) String name,
+                                         @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+                                         @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+                                         @RequestParam(value = "quantityBelow", required = false) Integer quantityBelow,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "after", required = false) String after) {
+        ProductSearchDTO search = ProductSearchDTO.builder()
+                .namePrefix(name)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .quantityBelow(quantityBelow)
+                .build();
+        return ResponseEntity.ok(productService.searchProducts(search, limit, after));
+    }
+
+    /**
+     * Autocomplete of the local product names.
+     *
+     * @param prefix start of the name, any case
+     * @param limit max number of suggestions
+     * @return id and name of the matching products
+     */
+    @GetMapping(path = "/search/names")
+    public ResponseEntity suggestProducts(@RequestParam(value = "prefix") String prefix,
+                                          @RequestParam(value = "limit", required = false) Integer limit) {
+        return ResponseEntity.ok(productService.suggestProducts(prefix, limit));
+    }
+
+    /**
+     * Stock value, low stock count and price histogram of the local catalog.
+     *
+     * @param lowStockBelow quantity under which a product is low on stock
+     * @param priceBuckets prices splitting the price histogram, e.g. {@code 10,50,100}
+     * @return
+     */
+    @GetMapping(path = "/inventory/stats")
+    public ResponseEntity getInventoryStats(@RequestParam(value = "lowStockBelow", required = false) Integer lowStockBelow,
+                                            @RequestParam(value = "priceBuckets", required = false) List<BigDecimal> priceBuckets) {
+        return ResponseEntity.ok(productService.getInventoryStats(lowStockBelow, priceBuckets));
+    }
+
+    /**
+     * Streams the whole local catalog as NDJSON, selected with {@code Accept: application/x-ndjson}. The stream may
+     * take up to {@code supply.chain.export.timeout.millis}, other asynchronous requests keep the default timeout.
+     *
+     * @param request request answered with the stream
+     * @return body written while the catalog is read
+     */
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts(HttpServletRequest request) {
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_TIMEOUT_INTERCEPTOR, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest asyncRequest, Callable<T> task) {
+                ((AsyncWebRequest) asyncRequest).setTimeout(exportTimeoutMillis);
+            }
+        });
+        StreamingResponseBody body = outputStream -> productService.exportProducts(outputStream);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
     }
 
     @PostMapping(value = "/product/{id}",
             produces = { "application/json" },
             consumes = { "application/json" })
-    public ResponseEntity updateProduct(@PathVariable(value = "id") String id, @RequestParam(value = "downstream",
+    public CompletableFuture<ResponseEntity> updateProduct(@PathVariable(value = "id") String id, @RequestParam(value = "downstream",
             required = false, defaultValue = "false") Boolean downstream, @RequestBody ProductDTO body) {
-        return ResponseEntity.created(null).body(productService.updateProduct(body, id, downstream));
+        return productService.updateProductAsync(body, id, downstream)
+                .<ResponseEntity>thenApply(product -> ResponseEntity.created(null).body(product));
     }
 
 }
@@ -0,0 +1,39 @@
+package com.waes.phillips.products.controller;
+
+import com.waes.phillips.products.integration.impl.SupplyChainSnapshotCache;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the {@code Age} header to responses served from a supply chain snapshot.
+ */
+@ControllerAdvice(assignableTypes = ProductController.class)
+public class SnapshotAgeResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            Object servedAge = ((ServletServerHttpRequest) request).getServletRequest()
+                    .getAttribute(SupplyChainSnapshotCache.SNAPSHOT_AGE_ATTRIBUTE);
+            if (servedAge instanceof SupplyChainSnapshotCache.ServedAge) {
+                ((SupplyChainSnapshotCache.ServedAge) servedAge).getSeconds()
+                        .ifPresent(age -> response.getHeaders().set(HttpHeaders.AGE, String.valueOf(age)));
+            }
+        }
+        return body;
+    }
+}
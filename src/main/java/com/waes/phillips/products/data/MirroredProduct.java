@@ -0,0 +1,33 @@
+package com.waes.phillips.products.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Copy of a product of the supply chain API, kept by the mirror sync. The fingerprint of its fields tells the sync
+ * whether the downstream product changed since it was last written.
+ */
+@Entity
+@Table(name = "Supply_Chain_Mirror")
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class MirroredProduct {
+    @Id
+    private String id;
+
+    private String name;
+    private BigDecimal price;
+    private Integer quantity;
+    private String fingerprint;
+    private Instant syncedAt;
+}
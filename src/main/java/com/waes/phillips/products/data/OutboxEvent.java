@@ -0,0 +1,74 @@
+package com.waes.phillips.products.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Local write waiting to be propagated to the supply chain API, recorded in the transaction of the write itself.
+ * Events of a product are sent in id order. A dispatcher claims the events it sends until {@code claimedUntil}, so
+ * other instances leave them alone meanwhile.
+ */
+@Entity
+@Table(name = "Product_Outbox", indexes = {
+        @Index(name = "idx_product_outbox_status", columnList = "status, id"),
+        @Index(name = "idx_product_outbox_product", columnList = "productId, id")})
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+
+    public enum Operation {
+        SAVE, UPDATE, DELETE
+    }
+
+    public enum Status {
+        PENDING, SENT, FAILED
+    }
+
+    // sequence ids keep the inserts of bulk writes in JDBC batches, an identity column would not
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_outbox_seq")
+    @SequenceGenerator(name = "product_outbox_seq", sequenceName = "product_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    private String productId;
+
+    @Enumerated(EnumType.STRING)
+    private Operation operation;
+
+    // the product as written, not bounded by any column of the product table
+    @Lob
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private int attempts;
+    private Instant createdAt;
+    private Instant nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @Column(length = 36)
+    private String claimedBy;
+    private Instant claimedUntil;
+}
@@ -8,20 +8,31 @@ import lombok.NoArgsConstructor;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "Product")
+@Table(name = "Product", indexes = {
+        @Index(name = "idx_product_name", columnList = "name"),
+        @Index(name = "idx_product_price", columnList = "price"),
+        @Index(name = "idx_product_quantity", columnList = "quantity")
+})
 @Builder
 @Getter
 @AllArgsConstructor
 @NoArgsConstructor
 public class Product {
+    // UUIDv7 for products created here, time ordered so new rows go to the end of the primary key index
     @Id
     private String id;
 
     private String name;
     private BigDecimal price;
     private Integer quantity;
+
+    // a null version also tells Spring Data the product is new, so save persists it without selecting it first
+    @Version
+    private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.waes.phillips.products.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Id the supply chain API gave to a product created through the outbox, when it is not the local id. Later updates
+ * and deletes of the product are sent to that id.
+ */
+@Entity
+@Table(name = "Supply_Chain_Product_Id")
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SupplyChainProductId {
+    @Id
+    private String productId;
+
+    private String supplierId;
+}
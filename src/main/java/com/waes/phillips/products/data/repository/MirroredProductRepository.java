@@ -0,0 +1,50 @@
+package com.waes.phillips.products.data.repository;
+
+import com.waes.phillips.products.data.MirroredProduct;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface MirroredProductRepository extends JpaRepository<MirroredProduct, String> {
+
+    /**
+     * Whole mirror ordered by id.
+     *
+     * @return mirrored products
+     */
+    List<MirroredProduct> findAllByOrderByIdAsc();
+
+    /**
+     * Id and fingerprint of every mirrored product, without loading the products themselves.
+     *
+     * @return pairs of id and fingerprint
+     */
+    @Query("select m.id, m.fingerprint from MirroredProduct m")
+    List<Object[]> findAllFingerprints();
+
+    /**
+     * Ids of the given products written at or after the given time, e.g. by a downstream write during a sync.
+     *
+     * @param ids   ids of the products
+     * @param since start of the sync
+     * @return ids of the products written since
+     */
+    @Query("select m.id from MirroredProduct m where m.id in :ids and m.syncedAt >= :since")
+    List<String> findIdsWrittenSince(@Param("ids") Collection<String> ids, @Param("since") Instant since);
+
+    /**
+     * Deletes the given products in a single statement, except the ones written at or after the given time.
+     *
+     * @param ids    ids of the products
+     * @param before start of the sync
+     * @return number of deleted rows
+     */
+    @Modifying
+    @Query("delete from MirroredProduct m where m.id in :ids and m.syncedAt < :before")
+    int deleteByIdInWrittenBefore(@Param("ids") Collection<String> ids, @Param("before") Instant before);
+}
@@ -0,0 +1,49 @@
+package com.waes.phillips.products.data.repository;
+
+import com.waes.phillips.products.data.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Oldest pending events that can be sent now. An event waiting for its next attempt or claimed by a dispatcher is
+     * left out together with the later events of its product, so products in backoff do not fill the batch and hold
+     * back the others.
+     *
+     * @param now      time of the dispatch
+     * @param pageable batch size, the page number is always 0
+     * @return events ordered by id
+     */
+    @Query("select e from OutboxEvent e where e.status = :status and e.nextAttemptAt <= :now "
+            + "and (e.claimedUntil is null or e.claimedUntil <= :now) and not exists ("
+            + "select b.id from OutboxEvent b where b.productId = e.productId and b.status = :status "
+            + "and b.id < e.id and (b.nextAttemptAt > :now or b.claimedUntil > :now)) order by e.id")
+    List<OutboxEvent> findDue(@Param("status") OutboxEvent.Status status, @Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Claims the events for the owner until the given time. Events another dispatcher claimed meanwhile are left out,
+     * as are the events behind them, so two dispatchers never send the same event or the events of a product out of
+     * order.
+     *
+     * @return number of events claimed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update OutboxEvent e set e.claimedBy = :owner, e.claimedUntil = :until where e.id in :ids "
+            + "and e.status = :status and (e.claimedUntil is null or e.claimedUntil <= :now) and not exists ("
+            + "select b.id from OutboxEvent b where b.productId = e.productId and b.status = :status "
+            + "and b.id < e.id and b.claimedUntil > :now and b.claimedBy <> :owner)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("status") OutboxEvent.Status status, @Param("owner") String owner,
+              @Param("now") Instant now, @Param("until") Instant until);
+
+    List<OutboxEvent> findByClaimedByOrderById(String claimedBy);
+
+    long countByStatus(OutboxEvent.Status status);
+}
@@ -1,8 +1,112 @@
 package com.waes.phillips.products.data.repository;
 
 import com.waes.phillips.products.data.Product;
-import org.springframework.data.repository.CrudRepository;
+import com.waes.phillips.products.model.ProductDTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface ProductRepository extends CrudRepository<Product, String>  {
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface ProductRepository extends PagingAndSortingRepository<Product, String>, ProductSearchRepository {
+
+    /**
+     * First page of the catalog ordered by id, projected straight into DTOs: no entity is hydrated or tracked by
+     * the persistence context. Read in its own read-only transaction, declared query methods get none by default.
+     *
+     * @param pageable page size, the page number is always 0
+     * @return products of the first page
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.waes.phillips.products.model.ProductDTO(p.id, p.name, p.price, p.quantity, p.version) "
+            + "from Product p order by p.id")
+    List<ProductDTO> findPage(Pageable pageable);
+
+    /**
+     * Keyset page of the catalog: products whose id comes after the given one, ordered by id. Projected like
+     * {@link #findPage(Pageable)}.
+     *
+     * @param after id of the last product of the previous page
+     * @param pageable page size, the page number is always 0
+     * @return products of the next page
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.waes.phillips.products.model.ProductDTO(p.id, p.name, p.price, p.quantity, p.version) "
+            + "from Product p where p.id > :after order by p.id")
+    List<ProductDTO> findPageAfter(@Param("after") String after, Pageable pageable);
+
+    /**
+     * Single product projected like {@link #findPage(Pageable)}, for reads that never modify it.
+     *
+     * @param id id of the product
+     * @return product, empty when there is no product with that id
+     */
+    @Query("select new com.waes.phillips.products.model.ProductDTO(p.id, p.name, p.price, p.quantity, p.version) "
+            + "from Product p where p.id = :id")
+    Optional<ProductDTO> findDTOById(@Param("id") String id);
+
+    /**
+     * Whole catalog as a cursor backed stream of DTOs, fetched 500 rows at a time. Nothing is kept by the
+     * persistence context, so there is nothing to detach. Must be consumed inside a transaction and closed
+     * afterwards.
+     *
+     * @return products ordered by id
+     */
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.waes.phillips.products.model.ProductDTO(p.id, p.name, p.price, p.quantity, p.version) "
+            + "from Product p order by p.id")
+    Stream<ProductDTO> streamAll();
+
+    /**
+     * Id and name of every product, without loading the products themselves. Must be consumed inside a
+     * transaction and closed afterwards.
+     *
+     * @return pairs of id and name
+     */
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select p.id, p.name from Product p")
+    Stream<Object[]> streamAllNames();
+
+    /**
+     * Id, price and quantity of every product, without loading the products themselves. Must be consumed inside
+     * a transaction and closed afterwards.
+     *
+     * @return triples of id, price and quantity
+     */
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select p.id, p.price, p.quantity from Product p")
+    Stream<Object[]> streamAllStock();
+
+    /**
+     * Updates the product in a single statement, without loading it first, and bumps its version.
+     *
+     * @return number of updated rows, 0 when there is no product with that id
+     */
+    @Modifying
+    @Query("update Product p set p.name = :name, p.price = :price, p.quantity = :quantity, p.version = p.version + 1 "
+            + "where p.id = :id")
+    int updateById(@Param("id") String id, @Param("name") String name, @Param("price") BigDecimal price,
+                   @Param("quantity") Integer quantity);
+
+    /**
+     * Same as {@link #updateById(String, String, BigDecimal, Integer)}, only when the product is still at the
+     * given version.
+     *
+     * @return number of updated rows, 0 when there is no product with that id and version
+     */
+    @Modifying
+    @Query("update Product p set p.name = :name, p.price = :price, p.quantity = :quantity, p.version = p.version + 1 "
+            + "where p.id = :id and p.version = :version")
+    int updateByIdAndVersion(@Param("id") String id, @Param("version") Long version, @Param("name") String name,
+                             @Param("price") BigDecimal price, @Param("quantity") Integer quantity);
 }
@@ -0,0 +1,24 @@
+package com.waes.phillips.products.data.repository;
+
+import com.waes.phillips.products.model.ProductDTO;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface ProductSearchRepository {
+
+    /**
+     * Keyset page of the products matching every given filter, ordered by id. Only the filters given are part of
+     * the query, so each of them can use the index of its column.
+     *
+     * @param namePrefix    start of the name, case sensitive
+     * @param minPrice      lowest price, inclusive
+     * @param maxPrice      highest price, inclusive
+     * @param quantityBelow quantity the products must be under
+     * @param after         id of the last product of the previous page
+     * @param limit         page size
+     * @return matching products, projected straight into DTOs
+     */
+    List<ProductDTO> search(String namePrefix, BigDecimal minPrice, BigDecimal maxPrice, Integer quantityBelow,
+                         String after, int limit);
+}
@@ -0,0 +1,60 @@
+package com.waes.phillips.products.data.repository;
+
+import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.model.ProductDTO;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class ProductSearchRepositoryImpl implements ProductSearchRepository {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<ProductDTO> search(String namePrefix, BigDecimal minPrice, BigDecimal maxPrice, Integer quantityBelow,
+                                String after, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductDTO> query = builder.createQuery(ProductDTO.class);
+        Root<Product> product = query.from(Product.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (Objects.nonNull(namePrefix)) {
+            predicates.add(builder.like(product.get("name"), escapeLike(namePrefix) + "%", LIKE_ESCAPE));
+        }
+        if (Objects.nonNull(minPrice)) {
+            predicates.add(builder.greaterThanOrEqualTo(product.get("price"), minPrice));
+        }
+        if (Objects.nonNull(maxPrice)) {
+            predicates.add(builder.lessThanOrEqualTo(product.get("price"), maxPrice));
+        }
+        if (Objects.nonNull(quantityBelow)) {
+            predicates.add(builder.lessThan(product.get("quantity"), quantityBelow));
+        }
+        if (Objects.nonNull(after)) {
+            predicates.add(builder.greaterThan(product.get("id"), after));
+        }
+        query.select(builder.construct(ProductDTO.class, product.get("id"), product.get("name"),
+                product.get("price"), product.get("quantity"), product.get("version")))
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(product.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
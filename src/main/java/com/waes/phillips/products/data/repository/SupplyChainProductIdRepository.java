@@ -0,0 +1,7 @@
+package com.waes.phillips.products.data.repository;
+
+import com.waes.phillips.products.data.SupplyChainProductId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SupplyChainProductIdRepository extends JpaRepository<SupplyChainProductId, String> {
+}
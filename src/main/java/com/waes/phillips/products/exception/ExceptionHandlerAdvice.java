@@ -1,11 +1,14 @@
 package com.waes.phillips.products.exception;
 
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @ControllerAdvice
 public class ExceptionHandlerAdvice {
@@ -15,6 +18,36 @@ public class ExceptionHandlerAdvice {
         return new ResponseEntity<>(createBody(exception, HttpStatus.NOT_FOUND.value()), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(value = InvalidRequestException.class)
+    public ResponseEntity<Map<String, String>> badRequestErrorHandler(Exception exception) {
+        return new ResponseEntity<>(createBody(exception, HttpStatus.BAD_REQUEST.value()), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(value = ProductConflictException.class)
+    public ResponseEntity<Map<String, String>> conflictErrorHandler(Exception exception) {
+        return new ResponseEntity<>(createBody(exception, HttpStatus.CONFLICT.value()), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(value = TimeoutException.class)
+    public ResponseEntity<Map<String, String>> timeoutErrorHandler(Exception exception) {
+        return new ResponseEntity<>(createBody(exception, HttpStatus.GATEWAY_TIMEOUT.value()), HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @ExceptionHandler(value = {BulkheadFullException.class, CallNotPermittedException.class})
+    public ResponseEntity<Map<String, String>> bulkheadFullErrorHandler(Exception exception) {
+        return new ResponseEntity<>(createBody(exception, HttpStatus.SERVICE_UNAVAILABLE.value()), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Supplier failures answer 502, or 504 when the supplier did not answer in time.
+     */
+    @ExceptionHandler(value = SupplyChainErrorException.class)
+    public ResponseEntity<Map<String, String>> supplyChainErrorHandler(SupplyChainErrorException exception) {
+        HttpStatus status = HttpStatus.GATEWAY_TIMEOUT.equals(exception.getHttpStatus()) ? HttpStatus.GATEWAY_TIMEOUT
+                : HttpStatus.BAD_GATEWAY;
+        return new ResponseEntity<>(createBody(exception, status.value()), status);
+    }
+
     @ExceptionHandler(value = Exception.class)
     public ResponseEntity<Map<String, String>> defaultErrorHandler(Exception exception) {
         return new ResponseEntity<>(createBody(exception, HttpStatus.INTERNAL_SERVER_ERROR.value()), HttpStatus.INTERNAL_SERVER_ERROR);
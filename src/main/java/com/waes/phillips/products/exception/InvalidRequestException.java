@@ -0,0 +1,11 @@
+package com.waes.phillips.products.exception;
+
+/**
+ * The request cannot be served as sent, e.g. a cursor that was not returned by a previous page.
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.waes.phillips.products.exception;
+
+/**
+ * The product was changed by someone else since the version the update was based on.
+ */
+public class ProductConflictException extends RuntimeException {
+
+    public ProductConflictException(String message) {
+        super(message);
+    }
+}
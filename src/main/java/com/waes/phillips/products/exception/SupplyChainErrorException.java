@@ -10,7 +10,7 @@ public class SupplyChainErrorException extends RuntimeException {
     private HttpStatus httpStatus;
     private String id;
 
-    SupplyChainErrorException(String errorMessageDetail, HttpStatus httpStatus) {
+    public SupplyChainErrorException(String errorMessageDetail, HttpStatus httpStatus) {
         super(errorMessageDetail);
         this.errorMessageDetail = errorMessageDetail;
         this.httpStatus = httpStatus;
@@ -25,4 +25,13 @@ public class SupplyChainErrorException extends RuntimeException {
         this.id = id;
     }
 
+    /**
+     * Whether the supplier rejected the request itself, retrying it would get the same answer.
+     *
+     * @return true for 4xx statuses
+     */
+    public boolean isClientError() {
+        return httpStatus.is4xxClientError();
+    }
+
 }
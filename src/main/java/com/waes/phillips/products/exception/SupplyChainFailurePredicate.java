@@ -0,0 +1,15 @@
+package com.waes.phillips.products.exception;
+
+import java.util.function.Predicate;
+
+/**
+ * Tells retries and circuit breakers which errors mean the supplier is failing. A 4xx answer, such as the
+ * 404 of an unknown product, is a valid response and is neither retried nor recorded as a failure.
+ */
+public class SupplyChainFailurePredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable throwable) {
+        return !(throwable instanceof SupplyChainErrorException && ((SupplyChainErrorException) throwable).isClientError());
+    }
+}
@@ -0,0 +1,28 @@
+package com.waes.phillips.products.integration;
+
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking variant of {@link SupplyChainIntegration}, no thread waits for the supplier.
+ */
+public interface AsyncSupplyChainIntegration {
+
+    CompletableFuture<ProductDTO> saveProduct(ProductDTO productDTO);
+    CompletableFuture<Void> deleteProduct(String id);
+    CompletableFuture<Optional<ProductDTO>> getProduct(String id);
+    CompletableFuture<ProductsDTO> getProducts();
+    CompletableFuture<Optional<ProductDTO>> updateProduct(ProductDTO productDTO, String id);
+
+    /**
+     * Sends the saves and updates together through the bulk endpoint.
+     *
+     * @return result of every write, in the order of the writes
+     */
+    List<CompletableFuture<ProductDTO>> writeProducts(List<SupplyChainBulkItemDTO> writes);
+}
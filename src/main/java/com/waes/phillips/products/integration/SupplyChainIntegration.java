@@ -3,6 +3,7 @@ package com.waes.phillips.products.integration;
 import com.waes.phillips.products.model.ProductDTO;
 import com.waes.phillips.products.model.ProductsDTO;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface SupplyChainIntegration {
 
@@ -11,4 +12,5 @@ public interface SupplyChainIntegration {
     Optional<ProductDTO> getProduct(String id);
     ProductsDTO getProducts();
     Optional<ProductDTO> updateProduct(ProductDTO productDTO, String id);
+    long forEachProduct(Consumer<ProductDTO> consumer);
 }
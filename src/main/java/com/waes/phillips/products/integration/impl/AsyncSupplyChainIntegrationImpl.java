@@ -0,0 +1,202 @@
+package com.waes.phillips.products.integration.impl;
+
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import com.waes.phillips.products.utils.Deadline;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+@Component
+@Slf4j
+public class AsyncSupplyChainIntegrationImpl implements AsyncSupplyChainIntegration {
+
+    private static final String RESILIENCE4J_PRODUCTS_DOWNSTREAM = "product_downstream";
+
+    private final String url;
+
+    private HttpUtils httpUtils;
+    private final CircuitBreaker circuitBreaker;
+    private final SupplyChainSnapshotCache snapshotCache;
+    private final SupplyChainSingleFlight singleFlight;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final SupplyChainBulkheads bulkheads;
+    private final SupplyChainWriteBatcher writeBatcher;
+    private final SupplyChainMirror mirror;
+
+    public AsyncSupplyChainIntegrationImpl(@Value("${supply.chain.url}") String supplyChainPath,
+                                           @Value("${supply.chain.resource.path}") String supplyChainResourcePath,
+                                           HttpUtils httpUtils,
+                                           CircuitBreakerRegistry circuitBreakerRegistry,
+                                           SupplyChainSnapshotCache snapshotCache,
+                                           SupplyChainSingleFlight singleFlight,
+                                           TimeLimiterRegistry timeLimiterRegistry,
+                                           ScheduledExecutorService scheduler,
+                                           SupplyChainBulkheads bulkheads,
+                                           SupplyChainWriteBatcher writeBatcher,
+                                           SupplyChainMirror mirror) {
+        this.url = supplyChainPath.concat(supplyChainResourcePath);
+        this.httpUtils = httpUtils;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(RESILIENCE4J_PRODUCTS_DOWNSTREAM);
+        this.snapshotCache = snapshotCache;
+        this.singleFlight = singleFlight;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.scheduler = scheduler;
+        this.bulkheads = bulkheads;
+        this.writeBatcher = writeBatcher;
+        this.mirror = mirror;
+    }
+
+    /**
+     * Answers out of the mirror while it is fresh, the mirror is read on the caller thread like the local catalog.
+     */
+    @Override
+    public CompletableFuture<ProductsDTO> getProducts() {
+        Optional<ProductsDTO> mirrored = mirror.getProducts();
+        if (mirrored.isPresent()) {
+            return CompletableFuture.completedFuture(mirrored.get());
+        }
+        log.info("Getting All Products from Supply Chain Integration");
+        return snapshotCache.getAsync(url, () -> executeGetRequest(url, ProductsDTO.class, SupplyChainIntegrationImpl.TIME_LIMITER_GET_PRODUCTS));
+    }
+
+    @Override
+    public CompletableFuture<Optional<ProductDTO>> updateProduct(ProductDTO productDTO, String id) {
+        log.info(String.format("Updating Product with data %s and id %s on Supply Chain Integration.", productDTO, id));
+        CompletableFuture<ProductDTO> update = writeBatcher.isEnabled() ? writeBatcher.updateAsync(productDTO, id)
+                : bulkheads.writeAsync(() -> withinTimeLimit(SupplyChainIntegrationImpl.TIME_LIMITER_UPDATE_PRODUCT,
+                deadline -> httpUtils.executePostRequestAsync(productUrl(id), productDTO, ProductDTO.class, deadline)));
+        return update.handle((updatedProduct, e) -> {
+            if (Objects.nonNull(e)) {
+                throw translateWriteError(e, id);
+            }
+            snapshotCache.evict(url, productUrl(id));
+            mirror.put(updatedProduct);
+            return Optional.ofNullable(updatedProduct);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<ProductDTO>> getProduct(String productId) {
+        Optional<ProductDTO> mirrored = mirror.getProduct(productId);
+        if (mirrored.isPresent()) {
+            return CompletableFuture.completedFuture(mirrored);
+        }
+        log.info(String.format("Getting Product with id %s from Supply Chain Integration.", productId));
+        String productUrl = productUrl(productId);
+        return snapshotCache.getAsync(productUrl, () -> executeGetRequest(productUrl, ProductDTO.class, SupplyChainIntegrationImpl.TIME_LIMITER_GET_PRODUCT))
+                .thenApply(Optional::ofNullable);
+    }
+
+    @Override
+    public CompletableFuture<ProductDTO> saveProduct(ProductDTO productDTO) {
+        log.info("Creating Product {} on Supply Chain Integration.", productDTO);
+        CompletableFuture<ProductDTO> save = writeBatcher.isEnabled() ? writeBatcher.saveAsync(productDTO)
+                : bulkheads.writeAsync(() -> withinTimeLimit(SupplyChainIntegrationImpl.TIME_LIMITER_SAVE_PRODUCT,
+                deadline -> httpUtils.executePostRequestAsync(url, productDTO, ProductDTO.class, deadline)));
+        return save.thenApply(savedProduct -> {
+            snapshotCache.evict(url);
+            mirror.put(savedProduct);
+            return savedProduct;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteProduct(String productId) {
+        log.info("Deleting product with id {} from Supply Chain Integration.", productId);
+        return bulkheads.writeAsync(() -> withinTimeLimit(SupplyChainIntegrationImpl.TIME_LIMITER_DELETE_PRODUCT,
+                deadline -> httpUtils.executeDeleteRequestAsync(productUrl(productId), ProductDTO.class, deadline)))
+                .handle((deletedProduct, e) -> {
+                    if (Objects.nonNull(e)) {
+                        throw translateWriteError(e, productId);
+                    }
+                    snapshotCache.evict(url, productUrl(productId));
+                    mirror.remove(productId);
+                    return null;
+                });
+    }
+
+    @Override
+    public List<CompletableFuture<ProductDTO>> writeProducts(List<SupplyChainBulkItemDTO> writes) {
+        log.info("Sending {} writes to Supply Chain Integration in bulk.", writes.size());
+        List<CompletableFuture<ProductDTO>> results = writeBatcher.writeAll(writes);
+        List<CompletableFuture<ProductDTO>> written = new ArrayList<>(results.size());
+        for (int i = 0; i < writes.size(); i++) {
+            SupplyChainBulkItemDTO write = writes.get(i);
+            boolean update = SupplyChainBulkItemDTO.Operation.UPDATE.equals(write.getOperation());
+            written.add(results.get(i).handle((product, e) -> {
+                if (Objects.nonNull(e)) {
+                    if (update) {
+                        throw translateWriteError(e, write.getId());
+                    }
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                if (update) {
+                    snapshotCache.evict(url, productUrl(write.getId()));
+                } else {
+                    snapshotCache.evict(url);
+                }
+                mirror.put(product);
+                return product;
+            }));
+        }
+        return written;
+    }
+
+    /**
+     * Identical GETs in flight, sync or async, share a single downstream request.
+     */
+    private <T> CompletableFuture<T> executeGetRequest(String resourceUrl, Class<T> clazz, String timeLimiterName) {
+        return singleFlight.executeAsync(resourceUrl, () -> bulkheads.readAsync(() -> circuitBreaker
+                .executeCompletionStage(() -> withinTimeLimit(timeLimiterName,
+                        deadline -> httpUtils.executeGetRequestAsync(resourceUrl, clazz, deadline)))
+                .toCompletableFuture()));
+    }
+
+    /**
+     * Completes with a {@link java.util.concurrent.TimeoutException} once the operation time limit is reached,
+     * the same limit is handed to the call as its deadline so retries stop within it as well.
+     */
+    private <T> CompletableFuture<T> withinTimeLimit(String timeLimiterName, Function<Deadline, CompletableFuture<T>> call) {
+        TimeLimiter timeLimiter = timeLimiterRegistry.timeLimiter(timeLimiterName);
+        Deadline deadline = Deadline.after(timeLimiter.getTimeLimiterConfig().getTimeoutDuration());
+        return timeLimiter.executeCompletionStage(scheduler, () -> call.apply(deadline)).toCompletableFuture();
+    }
+
+    /**
+     * Same translation as the blocking integration, a 404 on the write means the product does not exist.
+     */
+    private CompletionException translateWriteError(Throwable e, String productId) {
+        Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+        if (cause instanceof SupplyChainErrorException
+                && HttpStatus.NOT_FOUND.equals(((SupplyChainErrorException) cause).getHttpStatus())) {
+            snapshotCache.evict(productUrl(productId));
+            return new CompletionException(new ProductException(String.format("We could not find a Product with  Id %s", productId)));
+        }
+        return new CompletionException(cause);
+    }
+
+    private String productUrl(String productId) {
+        return url.concat("/").concat(productId);
+    }
+}
@@ -0,0 +1,103 @@
+package com.waes.phillips.products.integration.impl;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Caps the supply chain calls in flight, reads and writes separately, so a slow supplier can only hold part of
+ * the request threads and local catalog requests keep being served. Calls over the limit are rejected at once
+ * with a {@link io.github.resilience4j.bulkhead.BulkheadFullException}.
+ * <p>
+ * Non blocking calls always use the semaphore bulkheads. Blocking calls use them as well, or the thread pool
+ * bulkheads when {@code supply.chain.bulkhead.type} is {@code threadpool}, in which case the call runs on the
+ * bulkhead pool while the caller waits for it.
+ */
+@Component
+@Slf4j
+public class SupplyChainBulkheads {
+
+    public static final String READ_BULKHEAD = "supply_chain_read";
+    public static final String WRITE_BULKHEAD = "supply_chain_write";
+
+    private static final String THREAD_POOL_TYPE = "threadpool";
+
+    private final Bulkhead readBulkhead;
+    private final Bulkhead writeBulkhead;
+    private final ThreadPoolBulkhead readThreadPoolBulkhead;
+    private final ThreadPoolBulkhead writeThreadPoolBulkhead;
+
+    public SupplyChainBulkheads(BulkheadRegistry bulkheadRegistry,
+                                ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry,
+                                @Value("${supply.chain.bulkhead.type}") String bulkheadType) {
+        this.readBulkhead = bulkheadRegistry.bulkhead(READ_BULKHEAD);
+        this.writeBulkhead = bulkheadRegistry.bulkhead(WRITE_BULKHEAD);
+        if (THREAD_POOL_TYPE.equalsIgnoreCase(bulkheadType)) {
+            this.readThreadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead(READ_BULKHEAD);
+            this.writeThreadPoolBulkhead = threadPoolBulkheadRegistry.bulkhead(WRITE_BULKHEAD);
+        } else {
+            this.readThreadPoolBulkhead = null;
+            this.writeThreadPoolBulkhead = null;
+        }
+        log.info("Supply chain calls isolated by {} bulkheads", THREAD_POOL_TYPE.equalsIgnoreCase(bulkheadType) ? THREAD_POOL_TYPE : "semaphore");
+    }
+
+    public <T> T read(Supplier<T> call) {
+        return execute(readBulkhead, readThreadPoolBulkhead, call);
+    }
+
+    public <T> T write(Supplier<T> call) {
+        return execute(writeBulkhead, writeThreadPoolBulkhead, call);
+    }
+
+    /**
+     * Blocking read that has to stay on the caller thread, e.g. because it hands results to a consumer bound to
+     * the caller transaction. Always uses the semaphore bulkhead.
+     */
+    public <T> T readOnCallerThread(Supplier<T> call) {
+        return readBulkhead.executeSupplier(call);
+    }
+
+    public <T> CompletableFuture<T> readAsync(Supplier<CompletableFuture<T>> call) {
+        return executeAsync(readBulkhead, call);
+    }
+
+    public <T> CompletableFuture<T> writeAsync(Supplier<CompletableFuture<T>> call) {
+        return executeAsync(writeBulkhead, call);
+    }
+
+    @PreDestroy
+    public void close() throws Exception {
+        if (readThreadPoolBulkhead != null) {
+            readThreadPoolBulkhead.close();
+            writeThreadPoolBulkhead.close();
+        }
+    }
+
+    private <T> T execute(Bulkhead bulkhead, ThreadPoolBulkhead threadPoolBulkhead, Supplier<T> call) {
+        if (threadPoolBulkhead == null) {
+            return bulkhead.executeSupplier(call);
+        }
+        try {
+            return threadPoolBulkhead.executeSupplier(call).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * The permit is held until the returned future completes, not only while the call is being sent.
+     */
+    private <T> CompletableFuture<T> executeAsync(Bulkhead bulkhead, Supplier<CompletableFuture<T>> call) {
+        return bulkhead.<T>executeCompletionStage(call::get).toCompletableFuture();
+    }
+}
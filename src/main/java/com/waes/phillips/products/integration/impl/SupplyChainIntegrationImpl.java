@@ -1,81 +1,193 @@
 package com.waes.phillips.products.integration.impl;
 
 import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
 import com.waes.phillips.products.integration.SupplyChainIntegration;
 import com.waes.phillips.products.model.ProductDTO;
 import com.waes.phillips.products.model.ProductsDTO;
+import com.waes.phillips.products.utils.Deadline;
 import com.waes.phillips.products.utils.HttpUtils;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Component
 @Slf4j
 public class SupplyChainIntegrationImpl implements SupplyChainIntegration {
 
     private static final String RESILIENCE4J_PRODUCTS_DOWNSTREAM = "product_downstream";
+    public static final String TIME_LIMITER_GET_PRODUCTS = "supply_chain_get_products";
+    public static final String TIME_LIMITER_GET_PRODUCT = "supply_chain_get_product";
+    public static final String TIME_LIMITER_SAVE_PRODUCT = "supply_chain_save_product";
+    public static final String TIME_LIMITER_UPDATE_PRODUCT = "supply_chain_update_product";
+    public static final String TIME_LIMITER_DELETE_PRODUCT = "supply_chain_delete_product";
+    public static final String TIME_LIMITER_FOR_EACH_PRODUCT = "supply_chain_for_each_product";
+    private static final String BUNDLE_FIELD = "bundle";
 
     private final String supplyChainIntegrationBasePath;
     private final String supplyChainIntegrationResourcesPath;
     private final String url;
 
     private HttpUtils httpUtils;
+    private final CircuitBreaker circuitBreaker;
+    private final SupplyChainSnapshotCache snapshotCache;
+    private final SupplyChainSingleFlight singleFlight;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final SupplyChainBulkheads bulkheads;
+    private final SupplyChainWriteBatcher writeBatcher;
+    private final SupplyChainMirror mirror;
 
     public SupplyChainIntegrationImpl(@Value("${supply.chain.url}") String supplyChainPath,
                                       @Value("${supply.chain.resource.path}") String supplyChainResourcePath,
-                                      HttpUtils httpUtils) {
+                                      HttpUtils httpUtils,
+                                      CircuitBreakerRegistry circuitBreakerRegistry,
+                                      SupplyChainSnapshotCache snapshotCache,
+                                      SupplyChainSingleFlight singleFlight,
+                                      TimeLimiterRegistry timeLimiterRegistry,
+                                      SupplyChainBulkheads bulkheads,
+                                      SupplyChainWriteBatcher writeBatcher,
+                                      SupplyChainMirror mirror) {
         this.supplyChainIntegrationBasePath = supplyChainPath;
         this.supplyChainIntegrationResourcesPath = supplyChainResourcePath;
         this.url = supplyChainPath.concat(supplyChainResourcePath);
         this.httpUtils = httpUtils;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(RESILIENCE4J_PRODUCTS_DOWNSTREAM);
+        this.snapshotCache = snapshotCache;
+        this.singleFlight = singleFlight;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.bulkheads = bulkheads;
+        this.writeBatcher = writeBatcher;
+        this.mirror = mirror;
     }
 
+    /**
+     * Gets the catalog out of the mirror while it is fresh, otherwise through the snapshot cache, only stale or
+     * missing snapshots reach the supplier.
+     *
+     * @return {@link ProductsDTO}
+     */
     @Override
-    @CircuitBreaker(name = RESILIENCE4J_PRODUCTS_DOWNSTREAM, fallbackMethod = "supplyChainFallback")
     public ProductsDTO getProducts() {
+        Optional<ProductsDTO> mirrored = mirror.getProducts();
+        if (mirrored.isPresent()) {
+            return mirrored.get();
+        }
         log.info("Getting All Products from Supply Chain Integration");
-        return httpUtils.executeGetRequest(url, ProductsDTO.class);
+        return snapshotCache.get(url, () -> executeGetRequest(url, ProductsDTO.class, TIME_LIMITER_GET_PRODUCTS));
+    }
+
+    /**
+     * Streams the downstream catalog, handing every {@code bundle} element to the consumer as soon as it is
+     * parsed. Bypasses the snapshot cache, nothing is kept once consumed. The time limit only bounds the wait
+     * for the response to start, not how long the consumer takes.
+     *
+     * @param consumer receives every product
+     * @return number of products consumed
+     */
+    @Override
+    public long forEachProduct(Consumer<ProductDTO> consumer) {
+        log.info("Streaming All Products from Supply Chain Integration");
+        return bulkheads.readOnCallerThread(() -> circuitBreaker.executeSupplier(() -> withinTimeLimit(TIME_LIMITER_FOR_EACH_PRODUCT,
+                deadline -> httpUtils.executeGetRequest(url, BUNDLE_FIELD, ProductDTO.class, consumer, deadline))));
     }
 
     @Override
     public Optional<ProductDTO> updateProduct(ProductDTO productDTO, String id) {
         log.info(String.format("Updating Product with data %s and id %s on Supply Chain Integration.", productDTO, id));
-        validateProductId(id);
-        return Optional.of(httpUtils.executePostRequest(url.concat("/").concat(id), productDTO, ProductDTO.class));
+        try {
+            ProductDTO updatedProduct = writeBatcher.isEnabled() ? writeBatcher.update(productDTO, id)
+                    : bulkheads.write(() -> withinTimeLimit(TIME_LIMITER_UPDATE_PRODUCT,
+                    deadline -> httpUtils.executePostRequest(productUrl(id), productDTO, ProductDTO.class, deadline)));
+            snapshotCache.evict(url, productUrl(id));
+            mirror.put(updatedProduct);
+            return Optional.of(updatedProduct);
+        } catch (SupplyChainErrorException e) {
+            throw translateWriteError(e, id);
+        }
     }
 
     @Override
     public Optional<ProductDTO> getProduct (String productId) {
+        Optional<ProductDTO> mirrored = mirror.getProduct(productId);
+        if (mirrored.isPresent()) {
+            return mirrored;
+        }
         log.info(String.format("Getting Product with id %s from Supply Chain Integration.", productId));
-        return Optional.of(httpUtils.executeGetRequest(url.concat("/").concat(productId), ProductDTO.class));
+        String productUrl = productUrl(productId);
+        return Optional.of(snapshotCache.get(productUrl, () -> executeGetRequest(productUrl, ProductDTO.class, TIME_LIMITER_GET_PRODUCT)));
     }
 
     @Override
     public ProductDTO saveProduct(ProductDTO productDTO) {
         log.info("Creating Product {} on Supply Chain Integration.", productDTO);
-        return httpUtils.executePostRequest(url, productDTO, ProductDTO.class);
+        ProductDTO savedProduct = writeBatcher.isEnabled() ? writeBatcher.save(productDTO)
+                : bulkheads.write(() -> withinTimeLimit(TIME_LIMITER_SAVE_PRODUCT,
+                deadline -> httpUtils.executePostRequest(url, productDTO, ProductDTO.class, deadline)));
+        snapshotCache.evict(url);
+        mirror.put(savedProduct);
+        return savedProduct;
     }
 
     @Override
     public void deleteProduct(String productId) {
         log.info("Deleting product with id {} from Supply Chain Integration.", productId);
-        validateProductId(productId);
-        httpUtils.executeDeleteRequest(url.concat("/").concat(productId), ProductDTO.class);
+        try {
+            bulkheads.write(() -> withinTimeLimit(TIME_LIMITER_DELETE_PRODUCT,
+                    deadline -> httpUtils.executeDeleteRequest(productUrl(productId), ProductDTO.class, deadline)));
+            snapshotCache.evict(url, productUrl(productId));
+            mirror.remove(productId);
+        } catch (SupplyChainErrorException e) {
+            throw translateWriteError(e, productId);
+        }
+    }
+
+    /**
+     * Identical GETs in flight, sync or async, share a single downstream request, which is the only one taking
+     * a permit of the read bulkhead.
+     */
+    private <T> T executeGetRequest(String resourceUrl, Class<T> clazz, String timeLimiterName) {
+        return singleFlight.execute(resourceUrl, () -> bulkheads.read(() -> circuitBreaker.executeSupplier(() -> withinTimeLimit(timeLimiterName,
+                deadline -> httpUtils.executeGetRequest(resourceUrl, clazz, deadline)))));
     }
 
-    private void validateProductId(String productId) {
+    /**
+     * Runs the call on the caller thread with the operation time limit as its deadline, so the call itself gives
+     * up once the limit is reached, retries included. Timeouts are published as events of the time limiter.
+     */
+    private <T> T withinTimeLimit(String timeLimiterName, Function<Deadline, T> call) {
+        TimeLimiter timeLimiter = timeLimiterRegistry.timeLimiter(timeLimiterName);
+        Deadline deadline = Deadline.after(timeLimiter.getTimeLimiterConfig().getTimeoutDuration());
         try {
-            getProduct(productId);
-        } catch (Exception e) {
-            throw new ProductException(String.format("We could not find a Product with  Id %s", productId));
+            T result = call.apply(deadline);
+            timeLimiter.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            timeLimiter.onError(deadline.isExpired() ? TimeLimiter.createdTimeoutExceptionWithName(timeLimiterName, e) : e);
+            throw e;
         }
     }
 
-    public ProductsDTO supplyChainFallback(Exception e) {
-        return ProductsDTO.builder()
-                .bundle(Arrays.asList(ProductDTO.builder().name("Fallback message. Downstream service unavailable").build())).build();
+    private String productUrl(String productId) {
+        return url.concat("/").concat(productId);
+    }
+
+    /**
+     * Writes are sent without checking the product first, the supplier's 404 on the write itself tells that
+     * the product does not exist.
+     */
+    private RuntimeException translateWriteError(SupplyChainErrorException e, String productId) {
+        if (HttpStatus.NOT_FOUND.equals(e.getHttpStatus())) {
+            snapshotCache.evict(productUrl(productId));
+            return new ProductException(String.format("We could not find a Product with  Id %s", productId));
+        }
+        return e;
     }
 }
@@ -0,0 +1,190 @@
+package com.waes.phillips.products.integration.impl;
+
+import com.waes.phillips.products.data.MirroredProduct;
+import com.waes.phillips.products.data.repository.MirroredProductRepository;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Local copy of the downstream catalog, kept up to date by the mirror sync when {@code supply.chain.mirror.enabled}
+ * is set.
+ * <p>
+ * Downstream reads are served from the mirror as long as its last successful sync is not older than the max
+ * staleness, otherwise they go to the supplier as before. Successful downstream writes are applied to the mirror
+ * right away so that they can be read back before the next sync.
+ */
+@Component
+@Slf4j
+public class SupplyChainMirror {
+
+    public static final String LAG_METRIC = "supply.chain.mirror.lag";
+
+    private final boolean enabled;
+    private final Duration maxStaleness;
+    private final MirroredProductRepository mirroredProductRepository;
+    private final Clock clock;
+    private volatile Instant lastSyncedAt;
+
+    @Autowired
+    public SupplyChainMirror(@Value("${supply.chain.mirror.enabled}") boolean enabled,
+                             @Value("${supply.chain.mirror.max.staleness.seconds}") long maxStalenessSeconds,
+                             MirroredProductRepository mirroredProductRepository,
+                             MeterRegistry meterRegistry) {
+        this(enabled, Duration.ofSeconds(maxStalenessSeconds), mirroredProductRepository, meterRegistry, Clock.systemUTC());
+    }
+
+    public SupplyChainMirror(boolean enabled, Duration maxStaleness, MirroredProductRepository mirroredProductRepository,
+                             MeterRegistry meterRegistry, Clock clock) {
+        this.enabled = enabled;
+        this.maxStaleness = maxStaleness;
+        this.mirroredProductRepository = mirroredProductRepository;
+        this.clock = clock;
+        Gauge.builder(LAG_METRIC, this, mirror -> mirror.lag().map(lag -> lag.toMillis() / 1000.0).orElse(Double.NaN))
+                .description("Seconds since the last successful sync of the mirror")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Mirror that is never enabled, downstream reads always go to the supplier.
+     *
+     * @return {@link SupplyChainMirror}
+     */
+    public static SupplyChainMirror disabled() {
+        return new SupplyChainMirror(false, Duration.ZERO, null, new SimpleMeterRegistry(), Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the last successful sync is recent enough for the mirror to answer downstream reads.
+     */
+    public boolean isFresh() {
+        return enabled && lag().map(lag -> lag.compareTo(maxStaleness) <= 0).orElse(false);
+    }
+
+    /**
+     * Time since the last successful sync, empty before the first one.
+     */
+    public Optional<Duration> lag() {
+        return Optional.ofNullable(lastSyncedAt).map(syncedAt -> Duration.between(syncedAt, clock.instant()));
+    }
+
+    public void markSynced(Instant syncedAt) {
+        lastSyncedAt = syncedAt;
+    }
+
+    /**
+     * Downstream catalog out of the mirror.
+     *
+     * @return the whole catalog, or empty when the mirror is not fresh
+     */
+    public Optional<ProductsDTO> getProducts() {
+        if (!isFresh()) {
+            return Optional.empty();
+        }
+        return Optional.of(ProductsDTO.builder()
+                .bundle(mirroredProductRepository.findAllByOrderByIdAsc().stream()
+                        .map(SupplyChainMirror::toDTO)
+                        .collect(Collectors.toList()))
+                .build());
+    }
+
+    /**
+     * Downstream product out of the mirror.
+     *
+     * @param id id of the product
+     * @return the product, or empty when the mirror is not fresh or does not hold it yet
+     */
+    public Optional<ProductDTO> getProduct(String id) {
+        if (!isFresh()) {
+            return Optional.empty();
+        }
+        return mirroredProductRepository.findById(id).map(SupplyChainMirror::toDTO);
+    }
+
+    /**
+     * Applies a successful downstream save or update. A failure only delays the change until the next sync.
+     *
+     * @param productDTO product as answered by the supplier
+     */
+    public void put(ProductDTO productDTO) {
+        if (!enabled || Objects.isNull(productDTO) || Objects.isNull(productDTO.getId())) {
+            return;
+        }
+        try {
+            mirroredProductRepository.save(toEntity(productDTO, clock.instant()));
+        } catch (RuntimeException e) {
+            log.warn("Could not mirror product {}, it is picked up by the next sync", productDTO.getId());
+        }
+    }
+
+    /**
+     * Applies a successful downstream delete. A failure only delays the change until the next sync.
+     *
+     * @param id id of the product
+     */
+    public void remove(String id) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mirroredProductRepository.findById(id).ifPresent(mirroredProductRepository::delete);
+        } catch (RuntimeException e) {
+            log.warn("Could not remove product {} from the mirror, it is picked up by the next sync", id);
+        }
+    }
+
+    /**
+     * Digest of the fields of the product, equal digests mean nothing changed.
+     *
+     * @param productDTO downstream product
+     * @return fingerprint
+     */
+    public static String fingerprint(ProductDTO productDTO) {
+        BigDecimal price = productDTO.getPrice();
+        String fields = String.join("\u0000", String.valueOf(productDTO.getName()),
+                Objects.isNull(price) ? "null" : price.stripTrailingZeros().toPlainString(),
+                String.valueOf(productDTO.getQuantity()));
+        return UUID.nameUUIDFromBytes(fields.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public static MirroredProduct toEntity(ProductDTO productDTO, Instant syncedAt) {
+        return MirroredProduct.builder()
+                .id(productDTO.getId())
+                .name(productDTO.getName())
+                .price(productDTO.getPrice())
+                .quantity(productDTO.getQuantity())
+                .fingerprint(fingerprint(productDTO))
+                .syncedAt(syncedAt)
+                .build();
+    }
+
+    private static ProductDTO toDTO(MirroredProduct mirroredProduct) {
+        return ProductDTO.builder()
+                .id(mirroredProduct.getId())
+                .name(mirroredProduct.getName())
+                .price(mirroredProduct.getPrice())
+                .quantity(mirroredProduct.getQuantity())
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.waes.phillips.products.integration.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent GETs to the supply chain API, keyed by url.
+ * <p>
+ * The first caller of a key runs the request, every caller arriving while it is in flight shares its result
+ * or its error. Nothing is kept once the request completes, so later callers run their own request.
+ */
+@Component
+@Slf4j
+public class SupplyChainSingleFlight {
+
+    public static final String COALESCED_METRIC = "supply.chain.requests.coalesced";
+    public static final String EXECUTED_METRIC = "supply.chain.requests.executed";
+    public static final String IN_FLIGHT_METRIC = "supply.chain.requests.inflight";
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+    private final Counter executed;
+
+    public SupplyChainSingleFlight(MeterRegistry meterRegistry) {
+        this.coalesced = Counter.builder(COALESCED_METRIC)
+                .description("Downstream GETs served by a request already in flight")
+                .register(meterRegistry);
+        this.executed = Counter.builder(EXECUTED_METRIC)
+                .description("Downstream GETs actually sent to the supplier")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize(IN_FLIGHT_METRIC, Collections.emptyList(), inFlight);
+    }
+
+    /**
+     * Runs the request on the caller thread unless an identical one is in flight, in which case it waits for it.
+     *
+     * @param key     url of the resource
+     * @param request downstream call
+     * @return result of the shared request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> request) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+        if (Objects.nonNull(existing)) {
+            coalesced.increment();
+            log.debug("Joining in flight request for {}", key);
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        executed.increment();
+        try {
+            T value = request.get();
+            call.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // errors too, or the callers that joined would wait forever
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Non blocking variant of {@link #execute(String, Supplier)}, the request is only subscribed by the first caller.
+     *
+     * @param key     url of the resource
+     * @param request asynchronous downstream call
+     * @return future completed with the result of the shared request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, call);
+        if (Objects.nonNull(existing)) {
+            coalesced.increment();
+            log.debug("Joining in flight request for {}", key);
+            return existing.thenApply(value -> (T) value);
+        }
+
+        executed.increment();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, e) -> {
+            inFlight.remove(key, call);
+            if (Objects.isNull(e)) {
+                call.complete(value);
+            } else {
+                call.completeExceptionally(e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e);
+            }
+        });
+        return call.thenApply(value -> (T) value);
+    }
+
+    private RuntimeException unwrap(CompletionException e) {
+        if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+        }
+        return e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+    }
+}
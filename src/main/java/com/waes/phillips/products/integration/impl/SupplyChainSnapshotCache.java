@@ -0,0 +1,258 @@
+package com.waes.phillips.products.integration.impl;
+
+import com.waes.phillips.products.exception.SupplyChainFailurePredicate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Last known good responses of the supply chain API, keyed by url.
+ * <p>
+ * A fresh snapshot is served without calling the supplier, a stale one is served while it is refreshed in the
+ * background and an expired one is reloaded on the caller thread. When loading fails, whatever snapshot is left
+ * is served no matter its age, so outages return the last real data instead of an error. Answers such as a 404
+ * are not outages and are returned as they are.
+ */
+@Component
+@Slf4j
+public class SupplyChainSnapshotCache {
+
+    /**
+     * Request attribute holding the {@link ServedAge} of the snapshot served for the current request. It is set on the
+     * request thread and only filled in afterwards, as an asynchronous load may fail after that thread let go of the
+     * request attributes.
+     */
+    public static final String SNAPSHOT_AGE_ATTRIBUTE = "supplyChainSnapshotAge";
+
+    private static final SupplyChainFailurePredicate FAILURE_PREDICATE = new SupplyChainFailurePredicate();
+
+    private final Duration freshness;
+    private final Duration staleness;
+    private final Executor refreshExecutor;
+    private final Clock clock;
+    private final Map<String, Snapshot> snapshots;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public SupplyChainSnapshotCache(@Value("${supply.chain.snapshot.freshness.seconds}") long freshnessSeconds,
+                                    @Value("${supply.chain.snapshot.stale.seconds}") long staleSeconds,
+                                    @Value("${supply.chain.snapshot.max.entries}") int maxEntries) {
+        this(Duration.ofSeconds(freshnessSeconds), Duration.ofSeconds(staleSeconds), maxEntries,
+                Executors.newFixedThreadPool(2, runnable -> {
+                    Thread thread = new Thread(runnable, "supply-chain-snapshot-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }), Clock.systemUTC());
+    }
+
+    public SupplyChainSnapshotCache(Duration freshness, Duration staleness, int maxEntries, Executor refreshExecutor, Clock clock) {
+        this.freshness = freshness;
+        this.staleness = staleness;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+        this.snapshots = Collections.synchronizedMap(new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Gets the value of the given key, loading it only when there is no usable snapshot.
+     *
+     * @param key    url of the resource
+     * @param loader downstream call
+     * @return snapshot or loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        ServedAge servedAge = servedAge();
+        Snapshot snapshot = snapshots.get(key);
+        if (Objects.nonNull(snapshot)) {
+            Duration age = snapshot.age(clock);
+            if (age.compareTo(freshness) <= 0) {
+                return (T) serve(snapshot, age, servedAge);
+            }
+            if (age.compareTo(freshness.plus(staleness)) <= 0) {
+                refreshInBackground(key, loader);
+                return (T) serve(snapshot, age, servedAge);
+            }
+        }
+
+        try {
+            return load(key, loader);
+        } catch (RuntimeException e) {
+            if (Objects.isNull(snapshot) || !FAILURE_PREDICATE.test(e)) {
+                throw e;
+            }
+            log.warn("Supply chain unavailable for {}, serving last known good snapshot", key);
+            return (T) serve(snapshot, snapshot.age(clock), servedAge);
+        }
+    }
+
+    /**
+     * Non blocking variant of {@link #get(String, Supplier)}, the loader is only subscribed when there is no
+     * usable snapshot and background refreshes reuse it instead of the refresh executor.
+     *
+     * @param key    url of the resource
+     * @param loader asynchronous downstream call
+     * @return future completed with the snapshot or the loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(String key, Supplier<CompletableFuture<T>> loader) {
+        ServedAge servedAge = servedAge();
+        Snapshot snapshot = snapshots.get(key);
+        if (Objects.nonNull(snapshot)) {
+            Duration age = snapshot.age(clock);
+            if (age.compareTo(freshness) <= 0) {
+                return CompletableFuture.completedFuture((T) serve(snapshot, age, servedAge));
+            }
+            if (age.compareTo(freshness.plus(staleness)) <= 0) {
+                refreshAsyncInBackground(key, loader);
+                return CompletableFuture.completedFuture((T) serve(snapshot, age, servedAge));
+            }
+        }
+
+        return loadAsync(key, loader).handle((value, e) -> {
+            if (Objects.isNull(e)) {
+                return value;
+            }
+            Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+            if (Objects.isNull(snapshot) || !FAILURE_PREDICATE.test(cause)) {
+                throw new CompletionException(cause);
+            }
+            log.warn("Supply chain unavailable for {}, serving last known good snapshot", key);
+            return (T) serve(snapshot, snapshot.age(clock), servedAge);
+        });
+    }
+
+    /**
+     * Drops the snapshots of the given keys, used after writes.
+     *
+     * @param keys urls of the resources
+     */
+    public void evict(String... keys) {
+        for (String key : keys) {
+            snapshots.remove(key);
+        }
+    }
+
+    private <T> T load(String key, Supplier<T> loader) {
+        T value = loader.get();
+        if (Objects.nonNull(value)) {
+            snapshots.put(key, new Snapshot(value, clock.instant()));
+        }
+        return value;
+    }
+
+    private <T> CompletableFuture<T> loadAsync(String key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> future;
+        try {
+            future = loader.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.thenApply(value -> {
+            if (Objects.nonNull(value)) {
+                snapshots.put(key, new Snapshot(value, clock.instant()));
+            }
+            return value;
+        });
+    }
+
+    private <T> void refreshAsyncInBackground(String key, Supplier<CompletableFuture<T>> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        loadAsync(key, loader).whenComplete((value, e) -> {
+            if (Objects.nonNull(e)) {
+                log.warn("Background refresh of {} failed, keeping the current snapshot", key);
+            }
+            refreshing.remove(key);
+        });
+    }
+
+    private <T> void refreshInBackground(String key, Supplier<T> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                load(key, loader);
+            } catch (RuntimeException e) {
+                log.warn("Background refresh of {} failed, keeping the current snapshot", key);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private Object serve(Snapshot snapshot, Duration age, ServedAge servedAge) {
+        if (Objects.nonNull(servedAge)) {
+            servedAge.seconds = age.getSeconds();
+        }
+        return snapshot.value;
+    }
+
+    /**
+     * Age holder of the current request, registered on the request thread, null outside of a request.
+     */
+    private ServedAge servedAge() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (Objects.isNull(requestAttributes)) {
+            return null;
+        }
+        Object servedAge = requestAttributes.getAttribute(SNAPSHOT_AGE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (servedAge instanceof ServedAge) {
+            return (ServedAge) servedAge;
+        }
+        ServedAge created = new ServedAge();
+        requestAttributes.setAttribute(SNAPSHOT_AGE_ATTRIBUTE, created, RequestAttributes.SCOPE_REQUEST);
+        return created;
+    }
+
+    /**
+     * Age of the snapshot served for a request, empty while the request got none.
+     */
+    public static class ServedAge {
+        private volatile Long seconds;
+
+        public Optional<Long> getSeconds() {
+            return Optional.ofNullable(seconds);
+        }
+    }
+
+    private static class Snapshot {
+        private final Object value;
+        private final Instant fetchedAt;
+
+        private Snapshot(Object value, Instant fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+
+        private Duration age(Clock clock) {
+            return Duration.between(fetchedAt, clock.instant());
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.waes.phillips.products.integration.impl;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResponseDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResultDTO;
+import com.waes.phillips.products.utils.Deadline;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Micro-batches downstream saves and updates when {@code supply.chain.write.batch.enabled} is set.
+ * <p>
+ * Writes arriving together are collected until the batch holds the max items or the first of them has waited the
+ * max delay, then sent as one request to the bulk endpoint of the supply chain API. Every caller gets the result of
+ * its own write: the product on success, or the error it would have got on its own, e.g. a 404 for an unknown
+ * product. When the bulk request itself fails, every write of the batch fails with its error.
+ */
+@Component
+@Slf4j
+public class SupplyChainWriteBatcher {
+
+    public static final String TIME_LIMITER_WRITE_BATCH = "supply_chain_write_batch";
+    public static final String BATCH_SIZE_METRIC = "supply.chain.write.batch.size";
+
+    private final boolean enabled;
+    private final int maxItems;
+    private final Duration maxDelay;
+    private final String bulkUrl;
+    private final HttpUtils httpUtils;
+    private final SupplyChainBulkheads bulkheads;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+    private final ScheduledExecutorService scheduler;
+    private final DistributionSummary batchSize;
+
+    private final Object lock = new Object();
+    private List<PendingWrite> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    @Autowired
+    public SupplyChainWriteBatcher(@Value("${supply.chain.write.batch.enabled}") boolean enabled,
+                                   @Value("${supply.chain.write.batch.max.items}") int maxItems,
+                                   @Value("${supply.chain.write.batch.max.delay.millis}") long maxDelayMillis,
+                                   @Value("${supply.chain.url}") String supplyChainPath,
+                                   @Value("${supply.chain.resource.path}") String supplyChainResourcePath,
+                                   @Value("${supply.chain.write.batch.path}") String bulkPath,
+                                   HttpUtils httpUtils,
+                                   SupplyChainBulkheads bulkheads,
+                                   TimeLimiterRegistry timeLimiterRegistry,
+                                   MeterRegistry meterRegistry) {
+        this(enabled, maxItems, Duration.ofMillis(maxDelayMillis), supplyChainPath.concat(supplyChainResourcePath).concat(bulkPath),
+                httpUtils, bulkheads, timeLimiterRegistry, meterRegistry,
+                enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "supply-chain-write-batch");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null);
+    }
+
+    public SupplyChainWriteBatcher(boolean enabled, int maxItems, Duration maxDelay, String bulkUrl, HttpUtils httpUtils,
+                                   SupplyChainBulkheads bulkheads, TimeLimiterRegistry timeLimiterRegistry,
+                                   MeterRegistry meterRegistry, ScheduledExecutorService scheduler) {
+        this.enabled = enabled;
+        this.maxItems = maxItems;
+        this.maxDelay = maxDelay;
+        this.bulkUrl = bulkUrl;
+        this.httpUtils = httpUtils;
+        this.bulkheads = bulkheads;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+        this.scheduler = scheduler;
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE_METRIC)
+                .description("Writes sent per bulk request")
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Supply chain writes batched by up to {} items or {}ms to {}", maxItems, maxDelay.toMillis(), bulkUrl);
+        }
+    }
+
+    /**
+     * Batcher that is never enabled, writes go one by one.
+     *
+     * @return {@link SupplyChainWriteBatcher}
+     */
+    public static SupplyChainWriteBatcher disabled() {
+        return new SupplyChainWriteBatcher(false, 1, Duration.ZERO, null, null, null, null,
+                new SimpleMeterRegistry(), null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<ProductDTO> saveAsync(ProductDTO productDTO) {
+        return enqueue(SupplyChainBulkItemDTO.builder()
+                .operation(SupplyChainBulkItemDTO.Operation.SAVE)
+                .product(productDTO)
+                .build());
+    }
+
+    public CompletableFuture<ProductDTO> updateAsync(ProductDTO productDTO, String id) {
+        return enqueue(SupplyChainBulkItemDTO.builder()
+                .operation(SupplyChainBulkItemDTO.Operation.UPDATE)
+                .id(id)
+                .product(productDTO)
+                .build());
+    }
+
+    /**
+     * Blocking variant of {@link #saveAsync(ProductDTO)}, waits on the caller thread for the batch to answer.
+     */
+    public ProductDTO save(ProductDTO productDTO) {
+        return join(saveAsync(productDTO));
+    }
+
+    public ProductDTO update(ProductDTO productDTO, String id) {
+        return join(updateAsync(productDTO, id));
+    }
+
+    /**
+     * Sends the writes right away in bulk requests of up to the max items, whether batching is enabled or not.
+     *
+     * @return result of every write, in the order of the writes
+     */
+    public List<CompletableFuture<ProductDTO>> writeAll(List<SupplyChainBulkItemDTO> items) {
+        List<PendingWrite> writes = items.stream().map(PendingWrite::new).collect(Collectors.toList());
+        for (int from = 0; from < writes.size(); from += maxItems) {
+            send(writes.subList(from, Math.min(writes.size(), from + maxItems)));
+        }
+        return writes.stream().map(write -> write.result).collect(Collectors.toList());
+    }
+
+    /**
+     * Sends whatever is pending without waiting for the max delay.
+     */
+    public void flush() {
+        List<PendingWrite> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        if (Objects.nonNull(scheduler)) {
+            scheduler.shutdown();
+        }
+    }
+
+    private CompletableFuture<ProductDTO> enqueue(SupplyChainBulkItemDTO item) {
+        PendingWrite write = new PendingWrite(item);
+        List<PendingWrite> batch = null;
+        synchronized (lock) {
+            pending.add(write);
+            if (pending.size() >= maxItems) {
+                batch = takePending();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (Objects.nonNull(batch)) {
+            send(batch);
+        }
+        return write.result;
+    }
+
+    private List<PendingWrite> takePending() {
+        if (Objects.nonNull(scheduledFlush)) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        List<PendingWrite> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void send(List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batchSize.record(batch.size());
+        List<SupplyChainBulkItemDTO> items = batch.stream().map(write -> write.item).collect(Collectors.toList());
+        Deadline deadline = Deadline.after(timeLimiterRegistry.timeLimiter(TIME_LIMITER_WRITE_BATCH).getTimeLimiterConfig().getTimeoutDuration());
+        log.info("Sending {} writes to Supply Chain Integration in one bulk request.", batch.size());
+
+        CompletableFuture<SupplyChainBulkResponseDTO> response;
+        try {
+            response = bulkheads.writeAsync(() -> httpUtils.executePostRequestAsync(bulkUrl, items, SupplyChainBulkResponseDTO.class, deadline));
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((bulkResponse, e) -> {
+            if (Objects.nonNull(e)) {
+                Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+                log.error("Bulk request of {} writes failed", batch.size(), cause);
+                batch.forEach(write -> write.result.completeExceptionally(cause));
+                return;
+            }
+            fanOut(batch, bulkResponse);
+        });
+    }
+
+    private void fanOut(List<PendingWrite> batch, SupplyChainBulkResponseDTO bulkResponse) {
+        List<SupplyChainBulkResultDTO> results = Objects.isNull(bulkResponse) || Objects.isNull(bulkResponse.getResults())
+                ? new ArrayList<>() : bulkResponse.getResults();
+        for (SupplyChainBulkResultDTO result : results) {
+            if (Objects.isNull(result.getIndex()) || result.getIndex() < 0 || result.getIndex() >= batch.size()) {
+                continue;
+            }
+            PendingWrite write = batch.get(result.getIndex());
+            HttpStatus status = HttpStatus.resolve(Objects.isNull(result.getStatus()) ? 0 : result.getStatus());
+            if (Objects.nonNull(status) && status.is2xxSuccessful()) {
+                write.result.complete(result.getProduct());
+            } else {
+                String error = Objects.isNull(result.getError()) ? "Write rejected by the bulk endpoint" : result.getError();
+                write.result.completeExceptionally(new SupplyChainErrorException(error,
+                        Objects.isNull(status) ? HttpStatus.INTERNAL_SERVER_ERROR : status));
+            }
+        }
+        batch.stream()
+                .filter(write -> !write.result.isDone())
+                .forEach(write -> write.result.completeExceptionally(new SupplyChainErrorException("No result for the write in the bulk response")));
+    }
+
+    private static ProductDTO join(CompletableFuture<ProductDTO> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class PendingWrite {
+        private final SupplyChainBulkItemDTO item;
+        private final CompletableFuture<ProductDTO> result = new CompletableFuture<>();
+
+        private PendingWrite(SupplyChainBulkItemDTO item) {
+            this.item = item;
+        }
+    }
+}
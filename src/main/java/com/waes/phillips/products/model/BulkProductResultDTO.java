@@ -0,0 +1,22 @@
+package com.waes.phillips.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkProductResultDTO {
+
+    /**
+     * Position of the product in the request.
+     */
+    private Integer index;
+    private String id;
+    private String error;
+}
@@ -0,0 +1,37 @@
+package com.waes.phillips.products.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class InventoryStatsDTO {
+    private long products;
+
+    /**
+     * Units in stock, products without quantity count as none.
+     */
+    private long units;
+
+    /**
+     * Sum of price times quantity, over the products having both.
+     */
+    private BigDecimal stockValue;
+
+    /**
+     * Products with a quantity under the low stock threshold.
+     */
+    private long lowStock;
+
+    /**
+     * Products with a price, by price range.
+     */
+    private List<PriceBucketDTO> priceHistogram;
+}
@@ -0,0 +1,25 @@
+package com.waes.phillips.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Products priced from {@code from}, inclusive, to {@code to}, exclusive. The last bucket has no upper bound.
+ */
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PriceBucketDTO {
+    private BigDecimal from;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BigDecimal to;
+
+    private long count;
+}
@@ -1,11 +1,17 @@
 package com.waes.phillips.products.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
+
 import java.math.BigDecimal;
 
 @Builder
 @Getter
+@AllArgsConstructor
+@NoArgsConstructor
 public class ProductDTO {
 
     private String id;
@@ -13,4 +19,10 @@ public class ProductDTO {
     private BigDecimal price;
     private Integer quantity;
 
+    /**
+     * Version of the local product, an update carrying it only applies when the product is still at that version.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long version;
+
 }
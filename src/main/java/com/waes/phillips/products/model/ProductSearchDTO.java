@@ -0,0 +1,30 @@
+package com.waes.phillips.products.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Filters of a product search, absent ones match every product.
+ */
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductSearchDTO {
+
+    /**
+     * Start of the name, case sensitive.
+     */
+    private String namePrefix;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+
+    /**
+     * Only products with fewer units in stock.
+     */
+    private Integer quantityBelow;
+}
@@ -1,5 +1,6 @@
 package com.waes.phillips.products.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -13,4 +14,10 @@ import java.util.List;
 @NoArgsConstructor
 public class ProductsDTO {
     List<ProductDTO> bundle;
+
+    /**
+     * Opaque cursor of the next page, absent on the last page.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String next;
 }
@@ -0,0 +1,30 @@
+package com.waes.phillips.products.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * One write of a bulk request to the supply chain API.
+ */
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SupplyChainBulkItemDTO {
+
+    public enum Operation {
+        SAVE, UPDATE
+    }
+
+    private Operation operation;
+
+    /**
+     * Product to update, absent on saves.
+     */
+    private String id;
+    private ProductDTO product;
+}
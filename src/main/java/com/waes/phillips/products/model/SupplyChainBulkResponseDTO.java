@@ -0,0 +1,16 @@
+package com.waes.phillips.products.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SupplyChainBulkResponseDTO {
+    List<SupplyChainBulkResultDTO> results;
+}
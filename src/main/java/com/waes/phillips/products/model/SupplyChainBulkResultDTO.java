@@ -0,0 +1,28 @@
+package com.waes.phillips.products.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one write of a bulk request to the supply chain API.
+ */
+@Builder
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SupplyChainBulkResultDTO {
+
+    /**
+     * Position of the write in the request.
+     */
+    private Integer index;
+
+    /**
+     * HTTP status the write would have got on its own.
+     */
+    private Integer status;
+    private ProductDTO product;
+    private String error;
+}
@@ -0,0 +1,219 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.model.InventoryStatsDTO;
+import com.waes.phillips.products.model.PriceBucketDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Quantity and price of every local product in primitive columns, for the inventory aggregates.
+ * <p>
+ * Product {@code i} of the snapshot has its quantity at {@code quantities[i]} and its price, in cents, at
+ * {@code prices[i]}. Deleting a product moves the last one into its slot, so the columns stay dense. Loaded from the
+ * database at startup and kept in sync by the local writes once they commit. Aggregates are a single pass over the
+ * columns, split in chunks summed in parallel, the database is not queried.
+ */
+@Component
+@Slf4j
+public class InventorySnapshot {
+
+    private static final int MINOR_UNITS = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK_SIZE = 1 << 16;
+    // stands for a missing price or quantity
+    private static final long NO_PRICE = Long.MIN_VALUE;
+    private static final int NO_QUANTITY = Integer.MIN_VALUE;
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private long[] prices = new long[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public InventorySnapshot(ProductRepository productRepository, TransactionTemplate transactionTemplate) {
+        this.productRepository = productRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> stock = productRepository.streamAllStock()) {
+                stock.forEach(row -> put((String) row[0], (BigDecimal) row[1], (Integer) row[2]));
+            }
+        });
+        log.info("Inventory snapshot loaded with {} products", size());
+    }
+
+    /**
+     * Sets the price and quantity of a saved or updated product.
+     */
+    public void put(String id, BigDecimal price, Integer quantity) {
+        long minorPrice = Objects.isNull(price) ? NO_PRICE : toMinorUnits(price);
+        int units = Objects.isNull(quantity) ? NO_QUANTITY : quantity;
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            if (Objects.isNull(slot)) {
+                slot = size++;
+                ensureCapacity(size);
+                slots.put(id, slot);
+                ids[slot] = id;
+            }
+            prices[slot] = minorPrice;
+            quantities[slot] = units;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(id);
+            if (Objects.isNull(slot)) {
+                return;
+            }
+            int last = --size;
+            if (slot != last) {
+                ids[slot] = ids[last];
+                prices[slot] = prices[last];
+                quantities[slot] = quantities[last];
+                slots.put(ids[slot], slot);
+            }
+            ids[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggregates the whole inventory.
+     *
+     * @param lowStockBelow quantity under which a product counts as low on stock
+     * @param priceBounds   increasing prices splitting the histogram buckets, the first one starts at 0
+     * @return {@link InventoryStatsDTO}
+     */
+    public InventoryStatsDTO stats(int lowStockBelow, List<BigDecimal> priceBounds) {
+        long[] bounds = priceBounds.stream().mapToLong(InventorySnapshot::toMinorUnits).sorted().distinct().toArray();
+        Totals totals;
+        int products;
+        lock.readLock().lock();
+        try {
+            products = size;
+            int chunks = (products + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            totals = IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(chunk -> sum(chunk * CHUNK_SIZE, Math.min(products, (chunk + 1) * CHUNK_SIZE), lowStockBelow, bounds))
+                    .reduce(new Totals(bounds.length + 1), Totals::merge);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<PriceBucketDTO> histogram = new ArrayList<>(bounds.length + 1);
+        for (int bucket = 0; bucket <= bounds.length; bucket++) {
+            histogram.add(PriceBucketDTO.builder()
+                    .from(bucket == 0 ? BigDecimal.ZERO.setScale(MINOR_UNITS) : fromMinorUnits(bounds[bucket - 1]))
+                    .to(bucket == bounds.length ? null : fromMinorUnits(bounds[bucket]))
+                    .count(totals.histogram[bucket])
+                    .build());
+        }
+        return InventoryStatsDTO.builder()
+                .products(products)
+                .units(totals.units)
+                .stockValue(fromMinorUnits(totals.value))
+                .lowStock(totals.lowStock)
+                .priceHistogram(histogram)
+                .build();
+    }
+
+    private Totals sum(int from, int to, int lowStockBelow, long[] bounds) {
+        Totals totals = new Totals(bounds.length + 1);
+        for (int i = from; i < to; i++) {
+            int quantity = quantities[i];
+            long price = prices[i];
+            if (quantity != NO_QUANTITY) {
+                totals.units += quantity;
+                if (quantity < lowStockBelow) {
+                    totals.lowStock++;
+                }
+            }
+            if (price != NO_PRICE) {
+                if (quantity != NO_QUANTITY) {
+                    totals.value += price * quantity;
+                }
+                int bucket = Arrays.binarySearch(bounds, price);
+                totals.histogram[bucket >= 0 ? bucket + 1 : -bucket - 1]++;
+            }
+        }
+        return totals;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newLength);
+        prices = Arrays.copyOf(prices, newLength);
+        quantities = Arrays.copyOf(quantities, newLength);
+    }
+
+    private static long toMinorUnits(BigDecimal price) {
+        return price.setScale(MINOR_UNITS, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromMinorUnits(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_UNITS);
+    }
+
+    private static class Totals {
+        private long units;
+        private long value;
+        private long lowStock;
+        private final long[] histogram;
+
+        private Totals(int buckets) {
+            this.histogram = new long[buckets];
+        }
+
+        private Totals merge(Totals other) {
+            Totals merged = new Totals(histogram.length);
+            merged.units = units + other.units;
+            merged.value = value + other.value;
+            merged.lowStock = lowStock + other.lowStock;
+            for (int bucket = 0; bucket < histogram.length; bucket++) {
+                merged.histogram[bucket] = histogram[bucket] + other.histogram[bucket];
+            }
+            return merged;
+        }
+    }
+}
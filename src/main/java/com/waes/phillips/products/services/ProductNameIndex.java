@@ -0,0 +1,106 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.model.ProductDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Sorted in-memory index of the local product names for autocomplete, case insensitive.
+ * <p>
+ * Loaded from the database at startup and kept in sync by the local writes once they commit. A prefix lookup is a
+ * walk of the sorted keys starting at the prefix, it costs the log of the catalog size plus the suggestions
+ * returned, whatever the size of the catalog.
+ */
+@Component
+@Slf4j
+public class ProductNameIndex {
+
+    // separates the name from the id in the keys, sorts before any character of a name
+    private static final char SEPARATOR = '\u0000';
+
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentSkipListMap<String, ProductDTO> byName = new ConcurrentSkipListMap<>();
+    private final Map<String, String> keysById = new ConcurrentHashMap<>();
+
+    public ProductNameIndex(ProductRepository productRepository, TransactionTemplate transactionTemplate) {
+        this.productRepository = productRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void load() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Object[]> names = productRepository.streamAllNames()) {
+                names.forEach(row -> put((String) row[0], (String) row[1]));
+            }
+        });
+        log.info("Product name index loaded with {} products", keysById.size());
+    }
+
+    /**
+     * Indexes a saved or updated product under its current name.
+     *
+     * @param id   id of the product
+     * @param name name of the product, products without name are not indexed
+     */
+    public void put(String id, String name) {
+        keysById.compute(id, (productId, previousKey) -> {
+            if (Objects.nonNull(previousKey)) {
+                byName.remove(previousKey);
+            }
+            if (Objects.isNull(name)) {
+                return null;
+            }
+            String key = normalize(name) + SEPARATOR + productId;
+            byName.put(key, ProductDTO.builder().id(productId).name(name).build());
+            return key;
+        });
+    }
+
+    public void remove(String id) {
+        keysById.computeIfPresent(id, (productId, key) -> {
+            byName.remove(key);
+            return null;
+        });
+    }
+
+    /**
+     * Products whose name starts with the prefix, ignoring case, ordered by name.
+     *
+     * @param prefix start of the name
+     * @param limit  max number of products
+     * @return id and name of the products
+     */
+    public List<ProductDTO> suggest(String prefix, int limit) {
+        String from = normalize(prefix);
+        List<ProductDTO> suggestions = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<String, ProductDTO> entry : byName.tailMap(from).entrySet()) {
+            if (suggestions.size() >= limit || !entry.getKey().startsWith(from)) {
+                break;
+            }
+            suggestions.add(entry.getValue());
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
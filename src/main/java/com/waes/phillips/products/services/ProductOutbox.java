@@ -0,0 +1,65 @@
+package com.waes.phillips.products.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.OutboxEvent;
+import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.data.repository.OutboxEventRepository;
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.utils.ProductUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Records local writes in the outbox when {@code supply.chain.outbox.enabled} is set, to be propagated to the
+ * supply chain API by the {@link ProductOutboxDispatcher}. Events are recorded in the transaction of the write,
+ * so a write is propagated if and only if it commits.
+ */
+@Component
+@Slf4j
+public class ProductOutbox {
+
+    private final boolean enabled;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper mapper;
+
+    public ProductOutbox(@Value("${supply.chain.outbox.enabled}") boolean enabled,
+                         OutboxEventRepository outboxEventRepository,
+                         ObjectMapper mapper) {
+        this.enabled = enabled;
+        this.outboxEventRepository = outboxEventRepository;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Records the write of the product, does nothing when the outbox is disabled.
+     *
+     * @param operation write to propagate
+     * @param product   product as written locally
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OutboxEvent.Operation operation, Product product) {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            outboxEventRepository.save(OutboxEvent.builder()
+                    .productId(product.getId())
+                    .operation(operation)
+                    .payload(mapper.writeValueAsString(ProductUtils.parseProductEntityToDTO(product)))
+                    .status(OutboxEvent.Status.PENDING)
+                    .createdAt(now)
+                    .nextAttemptAt(now)
+                    .build());
+        } catch (JsonProcessingException e) {
+            log.error(String.format("Error recording %s of product %s in the outbox", operation, product.getId()));
+            throw new ProductException(String.format("Error recording %s of product %s in the outbox", operation, product.getId()));
+        }
+    }
+}
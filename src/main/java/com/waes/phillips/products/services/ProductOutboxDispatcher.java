@@ -0,0 +1,341 @@
+package com.waes.phillips.products.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.OutboxEvent;
+import com.waes.phillips.products.data.SupplyChainProductId;
+import com.waes.phillips.products.data.repository.OutboxEventRepository;
+import com.waes.phillips.products.data.repository.SupplyChainProductIdRepository;
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainFailurePredicate;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the outbox to the supply chain API in the background.
+ * <p>
+ * Every cycle claims the oldest pending events that are due for the lease, so other instances leave them alone, and
+ * sends them in rounds: a round holds the next event of every product, its saves and updates go together in bulk
+ * requests and its deletes concurrently next to them, so the events of a product go one after the other in id order.
+ * A product whose event fails keeps its later events until that one succeeds, it is retried with an exponential
+ * backoff and given up after the max attempts. The outcome of the whole batch is then written in one transaction,
+ * which also releases the events left pending.
+ * <p>
+ * The supply chain API may give a created product an id of its own: it is recorded as a {@link SupplyChainProductId}
+ * and the later updates and deletes of the product are sent to it.
+ */
+@Component
+@ConditionalOnProperty(name = "supply.chain.outbox.enabled", havingValue = "true")
+@Slf4j
+public class ProductOutboxDispatcher {
+
+    public static final String DISPATCHED_METRIC = "supply.chain.outbox.dispatched";
+    public static final String RETRIED_METRIC = "supply.chain.outbox.retried";
+    public static final String FAILED_METRIC = "supply.chain.outbox.failed";
+
+    private static final SupplyChainFailurePredicate FAILURE_PREDICATE = new SupplyChainFailurePredicate();
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final SupplyChainProductIdRepository supplyChainProductIdRepository;
+    private final AsyncSupplyChainIntegration supplyChainIntegration;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper mapper;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final Duration pollInterval;
+    private final Duration lease;
+    private final Clock clock;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ProductOutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                                   SupplyChainProductIdRepository supplyChainProductIdRepository,
+                                   AsyncSupplyChainIntegration supplyChainIntegration,
+                                   TransactionTemplate transactionTemplate,
+                                   ObjectMapper mapper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${supply.chain.outbox.batch.size}") int batchSize,
+                                   @Value("${supply.chain.outbox.max.attempts}") int maxAttempts,
+                                   @Value("${supply.chain.outbox.backoff.millis}") long backoffMillis,
+                                   @Value("${supply.chain.outbox.max.backoff.millis}") long maxBackoffMillis,
+                                   @Value("${supply.chain.outbox.poll.millis}") long pollMillis,
+                                   @Value("${supply.chain.outbox.lease.millis}") long leaseMillis) {
+        this(outboxEventRepository, supplyChainProductIdRepository, supplyChainIntegration, transactionTemplate, mapper, meterRegistry, batchSize,
+                maxAttempts, Duration.ofMillis(backoffMillis), Duration.ofMillis(maxBackoffMillis), Duration.ofMillis(pollMillis),
+                Duration.ofMillis(leaseMillis), Clock.systemUTC());
+    }
+
+    public ProductOutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                                   SupplyChainProductIdRepository supplyChainProductIdRepository,
+                                   AsyncSupplyChainIntegration supplyChainIntegration,
+                                   TransactionTemplate transactionTemplate,
+                                   ObjectMapper mapper,
+                                   MeterRegistry meterRegistry,
+                                   int batchSize,
+                                   int maxAttempts,
+                                   Duration backoff,
+                                   Duration maxBackoff,
+                                   Duration pollInterval,
+                                   Duration lease,
+                                   Clock clock) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.supplyChainProductIdRepository = supplyChainProductIdRepository;
+        this.supplyChainIntegration = supplyChainIntegration;
+        this.transactionTemplate = transactionTemplate;
+        this.mapper = mapper;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.pollInterval = pollInterval;
+        this.lease = lease;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "supply-chain-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drain, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Local writes propagated to the supply chain through the outbox every {}ms", pollInterval.toMillis());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends one batch of pending events.
+     *
+     * @return number of events sent
+     */
+    public int dispatch() {
+        Instant now = clock.instant();
+        String owner = UUID.randomUUID().toString();
+        List<OutboxEvent> events = transactionTemplate.execute(status -> claim(owner, now));
+        if (Objects.isNull(events) || events.isEmpty()) {
+            return 0;
+        }
+        Map<String, Deque<OutboxEvent>> pendingByProduct = events.stream()
+                .collect(Collectors.groupingBy(OutboxEvent::getProductId, LinkedHashMap::new, Collectors.toCollection(ArrayDeque::new)));
+        List<SupplyChainProductId> knownIds = supplyChainProductIdRepository.findAllById(pendingByProduct.keySet());
+        Map<String, String> supplierIds = new HashMap<>();
+        knownIds.forEach(known -> supplierIds.put(known.getProductId(), known.getSupplierId()));
+
+        List<OutboxEvent> round;
+        while (!(round = nextRound(pendingByProduct, now)).isEmpty()) {
+            sendRound(round, supplierIds, now).forEach(held -> pendingByProduct.remove(held.getProductId()));
+        }
+
+        List<SupplyChainProductId> removedIds = knownIds.stream()
+                .filter(known -> !supplierIds.containsKey(known.getProductId()))
+                .collect(Collectors.toList());
+        knownIds.forEach(known -> supplierIds.remove(known.getProductId(), known.getSupplierId()));
+        List<SupplyChainProductId> newIds = supplierIds.entrySet().stream()
+                .map(entry -> SupplyChainProductId.builder().productId(entry.getKey()).supplierId(entry.getValue()).build())
+                .collect(Collectors.toList());
+
+        Map<Boolean, List<OutboxEvent>> outcomes = events.stream()
+                .collect(Collectors.partitioningBy(event -> OutboxEvent.Status.SENT.equals(event.getStatus())));
+        List<OutboxEvent> sent = outcomes.get(true);
+        List<OutboxEvent> released = outcomes.get(false);
+        released.forEach(event -> {
+            event.setClaimedBy(null);
+            event.setClaimedUntil(null);
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxEventRepository.deleteInBatch(sent);
+            outboxEventRepository.saveAll(released);
+            supplyChainProductIdRepository.deleteInBatch(removedIds);
+            supplyChainProductIdRepository.saveAll(newIds);
+        });
+        meterRegistry.counter(DISPATCHED_METRIC).increment(sent.size());
+        return sent.size();
+    }
+
+    /**
+     * Claims the due events for the owner in one transaction, the lease has to outlast the dispatch of a batch.
+     *
+     * @return events claimed, ordered by id
+     */
+    private List<OutboxEvent> claim(String owner, Instant now) {
+        List<Long> ids = outboxEventRepository.findDue(OutboxEvent.Status.PENDING, now, PageRequest.of(0, batchSize)).stream()
+                .map(OutboxEvent::getId)
+                .collect(Collectors.toList());
+        if (ids.isEmpty() || outboxEventRepository.claim(ids, OutboxEvent.Status.PENDING, owner, now, now.plus(lease)) == 0) {
+            return Collections.emptyList();
+        }
+        return outboxEventRepository.findByClaimedByOrderById(owner);
+    }
+
+    private void drain() {
+        try {
+            // a full batch means more events are waiting
+            while (dispatch() == batchSize) {
+                log.debug("Outbox batch of {} events dispatched", batchSize);
+            }
+        } catch (RuntimeException e) {
+            log.error("Error dispatching the outbox", e);
+        }
+    }
+
+    /**
+     * Takes the next event of every product, products whose next event is waiting for its next attempt are done.
+     */
+    private static List<OutboxEvent> nextRound(Map<String, Deque<OutboxEvent>> pendingByProduct, Instant now) {
+        List<OutboxEvent> round = new ArrayList<>(pendingByProduct.size());
+        Iterator<Deque<OutboxEvent>> products = pendingByProduct.values().iterator();
+        while (products.hasNext()) {
+            Deque<OutboxEvent> productEvents = products.next();
+            OutboxEvent next = productEvents.pollFirst();
+            if (!next.getNextAttemptAt().isAfter(now)) {
+                round.add(next);
+            } else {
+                productEvents.clear();
+            }
+            if (productEvents.isEmpty()) {
+                products.remove();
+            }
+        }
+        return round;
+    }
+
+    /**
+     * Sends the saves and updates of the round in bulk and its deletes one by one, the bulk endpoint has none, then
+     * waits for all of them. Every event is sent to the id the supplier knows the product by, and that id is kept
+     * track of in {@code supplierIds}: a save answered with another id adds it, a delete removes it.
+     *
+     * @return events that failed and hold back the later events of their product
+     */
+    private List<OutboxEvent> sendRound(List<OutboxEvent> round, Map<String, String> supplierIds, Instant now) {
+        Map<OutboxEvent, CompletableFuture<?>> sends = new LinkedHashMap<>();
+        List<OutboxEvent> writes = new ArrayList<>();
+        List<SupplyChainBulkItemDTO> items = new ArrayList<>();
+        for (OutboxEvent event : round) {
+            String supplierId = supplierIds.getOrDefault(event.getProductId(), event.getProductId());
+            if (OutboxEvent.Operation.DELETE.equals(event.getOperation())) {
+                sends.put(event, supplyChainIntegration.deleteProduct(supplierId));
+                continue;
+            }
+            try {
+                boolean update = OutboxEvent.Operation.UPDATE.equals(event.getOperation());
+                items.add(SupplyChainBulkItemDTO.builder()
+                        .operation(update ? SupplyChainBulkItemDTO.Operation.UPDATE : SupplyChainBulkItemDTO.Operation.SAVE)
+                        .id(update ? supplierId : null)
+                        .product(mapper.readValue(event.getPayload(), ProductDTO.class))
+                        .build());
+                writes.add(event);
+            } catch (IOException e) {
+                sends.put(event, CompletableFuture.failedFuture(e));
+            }
+        }
+        if (!items.isEmpty()) {
+            List<CompletableFuture<ProductDTO>> results = supplyChainIntegration.writeProducts(items);
+            for (int i = 0; i < writes.size(); i++) {
+                sends.put(writes.get(i), results.get(i));
+            }
+        }
+
+        List<OutboxEvent> held = new ArrayList<>();
+        sends.forEach((event, send) -> {
+            try {
+                sent(event, send.join(), supplierIds);
+            } catch (RuntimeException e) {
+                Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+                if (OutboxEvent.Operation.DELETE.equals(event.getOperation()) && cause instanceof ProductException) {
+                    log.info("Product {} was already deleted on the supply chain", event.getProductId());
+                    sent(event, null, supplierIds);
+                } else if (!recordFailure(event, cause, now)) {
+                    held.add(event);
+                }
+            }
+        });
+        return held;
+    }
+
+    private void sent(OutboxEvent event, Object result, Map<String, String> supplierIds) {
+        String productId = event.getProductId();
+        if (OutboxEvent.Operation.DELETE.equals(event.getOperation())) {
+            supplierIds.remove(productId);
+        } else if (OutboxEvent.Operation.SAVE.equals(event.getOperation()) && result instanceof ProductDTO) {
+            String createdId = ((ProductDTO) result).getId();
+            if (Objects.nonNull(createdId) && !productId.equals(createdId)) {
+                log.info("Product {} was created on the supply chain as {}", productId, createdId);
+                supplierIds.put(productId, createdId);
+            }
+        }
+        event.setStatus(OutboxEvent.Status.SENT);
+    }
+
+    /**
+     * Schedules the next attempt of the event, or gives it up when the error will not go away by retrying or it
+     * ran out of attempts. The later events of the product only go on when it is given up.
+     *
+     * @return whether the event was given up
+     */
+    private boolean recordFailure(OutboxEvent event, Throwable e, Instant now) {
+        event.setAttempts(event.getAttempts() + 1);
+        event.setLastError(truncate(String.valueOf(e.getMessage())));
+        boolean retryable = !(e instanceof ProductException) && !(e instanceof IOException) && FAILURE_PREDICATE.test(e);
+        if (!retryable || event.getAttempts() >= maxAttempts) {
+            log.error("Giving up {} of product {} after {} attempts: {}", event.getOperation(), event.getProductId(),
+                    event.getAttempts(), e.getMessage());
+            event.setStatus(OutboxEvent.Status.FAILED);
+            meterRegistry.counter(FAILED_METRIC).increment();
+            return true;
+        }
+        long backoffMillis = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(event.getAttempts() - 1, 30));
+        event.setNextAttemptAt(now.plusMillis(backoffMillis));
+        log.warn("{} of product {} failed, attempt {} in {}ms", event.getOperation(), event.getProductId(),
+                event.getAttempts() + 1, backoffMillis);
+        meterRegistry.counter(RETRIED_METRIC).increment();
+        return false;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -1,16 +1,34 @@
 package com.waes.phillips.products.services;
 
+import com.waes.phillips.products.model.BulkProductsResultDTO;
+import com.waes.phillips.products.model.InventoryStatsDTO;
 import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductSearchDTO;
 import com.waes.phillips.products.model.ProductsDTO;
 import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public interface ProductService {
 
     ProductDTO saveProduct(ProductDTO productDTO, Boolean downstream);
+    BulkProductsResultDTO saveProducts(List<ProductDTO> productDTOs);
     void deleteProduct(String id, Boolean downstream);
     Optional<ProductDTO> getProduct(String id);
-    ProductsDTO getProducts(Boolean downstream);
+    ProductsDTO getProducts(Boolean downstream, Integer limit, String after);
     Optional<ProductDTO> updateProduct(ProductDTO productDTO, String id, Boolean downstream);
+    ProductsDTO searchProducts(ProductSearchDTO search, Integer limit, String after);
+    List<ProductDTO> suggestProducts(String prefix, Integer limit);
+    InventoryStatsDTO getInventoryStats(Integer lowStockBelow, List<BigDecimal> priceBuckets);
+    void exportProducts(OutputStream outputStream) throws IOException;
+    CompletableFuture<ProductDTO> saveProductAsync(ProductDTO productDTO, Boolean downstream);
+    CompletableFuture<Void> deleteProductAsync(String id, Boolean downstream);
+    CompletableFuture<ProductsDTO> getProductsAsync(Boolean downstream, Integer limit, String after);
+    CompletableFuture<Optional<ProductDTO>> updateProductAsync(ProductDTO productDTO, String id, Boolean downstream);
 }
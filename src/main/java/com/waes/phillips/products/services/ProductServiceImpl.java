@@ -1,32 +1,108 @@
 package com.waes.phillips.products.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.exception.InvalidRequestException;
+import com.waes.phillips.products.exception.ProductConflictException;
 import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
 import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.model.BulkProductResultDTO;
+import com.waes.phillips.products.model.BulkProductsResultDTO;
+import com.waes.phillips.products.model.InventoryStatsDTO;
+import com.waes.phillips.products.model.ProductSearchDTO;
 import com.waes.phillips.products.model.ProductsDTO;
 import com.waes.phillips.products.utils.ProductUtils;
+import com.waes.phillips.products.utils.UuidV7;
+import com.waes.phillips.products.data.OutboxEvent;
 import com.waes.phillips.products.data.Product;
 import com.waes.phillips.products.data.repository.ProductRepository;
 import com.waes.phillips.products.model.ProductDTO;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 public class ProductServiceImpl implements ProductService {
 
+    public static final String PRODUCTS_CACHE = "products";
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    private static final int NDJSON_SEPARATOR = '\n';
+    static final int BULK_CHUNK_SIZE = 500;
+    static final int WRITE_LOCK_STRIPES = 64;
+    static final int DEFAULT_SUGGESTIONS = 10;
+    static final int DEFAULT_LOW_STOCK = 10;
+    static final List<BigDecimal> DEFAULT_PRICE_BUCKETS = Arrays.asList(BigDecimal.valueOf(10), BigDecimal.valueOf(50),
+            BigDecimal.valueOf(100), BigDecimal.valueOf(500));
+
     @Autowired
     private ProductRepository productRepository;
 
     @Autowired
     private SupplyChainIntegration supplyChainIntegration;
 
+    @Autowired
+    private AsyncSupplyChainIntegration asyncSupplyChainIntegration;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductOutbox productOutbox;
+
+    @Autowired
+    private ProductNameIndex productNameIndex;
+
+    @Autowired
+    private InventorySnapshot inventorySnapshot;
+
+    // a local write holds the lock of its products from its transaction until the in-memory views are updated, so
+    // they apply the writes of a product in commit order: an update racing a delete can not index the product again
+    private final Lock[] writeLocks = IntStream.range(0, WRITE_LOCK_STRIPES)
+            .mapToObj(stripe -> new ReentrantLock())
+            .toArray(Lock[]::new);
+
+    // not put in the cache: a new product is cached by its first read, like the products of the bulk saves
     @Override
     public ProductDTO saveProduct(ProductDTO productDTO, Boolean downstream) {
 
@@ -34,45 +110,195 @@ public class ProductServiceImpl implements ProductService {
             if (downstream) {
                 return supplyChainIntegration.saveProduct(productDTO);
             }
-            Product product = Product.builder()
-                    .id(UUID.randomUUID().toString())
-                    .name(productDTO.getName())
-                    .quantity(productDTO.getQuantity())
-                    .price(productDTO.getPrice())
-                    .build();
-
-            Product newProduct = productRepository.save(product);
+            Product product = buildNewProduct(productDTO);
+
+            Product newProduct = lockedWrite(Collections.singletonList(product.getId()), () -> {
+                Product saved = transactionTemplate.execute(status -> {
+                    Product persisted = productRepository.save(product);
+                    productOutbox.record(OutboxEvent.Operation.SAVE, persisted);
+                    return persisted;
+                });
+                indexWritten(saved);
+                return saved;
+            });
             log.info(String.format("product %s was saved successfully", product.getName()));
 
             return ProductUtils.parseProductEntityToDTO(newProduct);
         } catch (Exception e) {
             log.error(String.format("Error saving product %s", productDTO.getName()));
-            throw new ProductException(String.format("Error saving product %s", productDTO.getName()));
+            throw translate(e, String.format("Error saving product %s", productDTO.getName()));
+        }
+    }
+
+    /**
+     * Persists the products in transactions of {@value #BULK_CHUNK_SIZE} items, relying on the JDBC batching
+     * configured for hibernate. When a chunk fails its items are retried one by one so that the error is
+     * reported only for the products that caused it.
+     *
+     * @param productDTOs products to create
+     * @return id or error of every product, in request order
+     */
+    @Override
+    public BulkProductsResultDTO saveProducts(List<ProductDTO> productDTOs) {
+        List<BulkProductResultDTO> results = new ArrayList<>(productDTOs.size());
+
+        for (int from = 0; from < productDTOs.size(); from += BULK_CHUNK_SIZE) {
+            int to = Math.min(from + BULK_CHUNK_SIZE, productDTOs.size());
+            results.addAll(saveChunk(productDTOs.subList(from, to), from));
+        }
+        log.info(String.format("%d products were processed in bulk", productDTOs.size()));
+
+        return BulkProductsResultDTO.builder().results(results).build();
+    }
+
+    private List<BulkProductResultDTO> saveChunk(List<ProductDTO> chunk, int offset) {
+        List<Product> products = chunk.stream()
+                .map(productDTO -> isValidForBulk(productDTO) ? buildNewProduct(productDTO) : null)
+                .collect(Collectors.toList());
+        List<String> ids = products.stream().filter(Objects::nonNull).map(Product::getId).collect(Collectors.toList());
+        List<Product> saved = lockedWrite(ids, () -> {
+            List<Product> persisted;
+            try {
+                transactionTemplate.executeWithoutResult(status -> persistAll(products));
+                persisted = products;
+            } catch (Exception e) {
+                log.error(String.format("Error saving products chunk starting at %d, saving them one by one", offset));
+                persisted = products.stream()
+                        .map(product -> Objects.nonNull(product) ? saveSingle(product) : null)
+                        .collect(Collectors.toList());
+            }
+            persisted.stream().filter(Objects::nonNull).forEach(this::indexWritten);
+            return persisted;
+        });
+        List<BulkProductResultDTO> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            results.add(buildBulkResult(chunk.get(i), saved.get(i), offset + i));
         }
+        return results;
+    }
+
+    /**
+     * Saves a product of a failed chunk on its own, as a copy keeping its id: the entity of the chunk may have been
+     * given a version by the rolled back persist.
+     */
+    private Product saveSingle(Product failed) {
+        Product product = Product.builder()
+                .id(failed.getId())
+                .name(failed.getName())
+                .quantity(failed.getQuantity())
+                .price(failed.getPrice())
+                .build();
+        try {
+            transactionTemplate.executeWithoutResult(status -> persistAll(Collections.singletonList(product)));
+            return product;
+        } catch (Exception e) {
+            log.error(String.format("Error saving product %s", product.getName()));
+            return null;
+        }
+    }
+
+    /**
+     * Runs a local write holding the locks of its products. The stripes are locked in increasing order, so writes
+     * of several products can not deadlock.
+     */
+    private <T> T lockedWrite(Collection<String> ids, Supplier<T> write) {
+        int[] stripes = ids.stream()
+                .mapToInt(id -> Math.floorMod(id.hashCode(), WRITE_LOCK_STRIPES))
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int stripe : stripes) {
+            writeLocks[stripe].lock();
+        }
+        try {
+            return write.get();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                writeLocks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Brings the in-memory views of the catalog up to date with a committed save or update. The write is not failed
+     * when they can not be updated, the database is the reference and the views are loaded from it at startup.
+     */
+    private void indexWritten(Product product) {
+        try {
+            productNameIndex.put(product.getId(), product.getName());
+            inventorySnapshot.put(product.getId(), product.getPrice(), product.getQuantity());
+        } catch (RuntimeException e) {
+            log.error(String.format("Product %s was written but could not be indexed", product.getId()), e);
+        }
+    }
+
+    private void indexRemoved(String id) {
+        try {
+            productNameIndex.remove(id);
+            inventorySnapshot.remove(id);
+        } catch (RuntimeException e) {
+            log.error(String.format("Product %s was deleted but could not be removed from the index", id), e);
+        }
+    }
+
+    private boolean isValidForBulk(ProductDTO productDTO) {
+        return Objects.nonNull(productDTO) && Objects.nonNull(productDTO.getName());
+    }
+
+    private BulkProductResultDTO buildBulkResult(ProductDTO productDTO, Product product, int index) {
+        if (Objects.nonNull(product)) {
+            return BulkProductResultDTO.builder().index(index).id(product.getId()).build();
+        }
+        String error = isValidForBulk(productDTO) ? String.format("Error saving product %s", productDTO.getName())
+                : "Product name is required";
+        return BulkProductResultDTO.builder().index(index).error(error).build();
+    }
+
+    private void persistAll(List<Product> products) {
+        products.stream().filter(Objects::nonNull).forEach(product -> {
+            entityManager.persist(product);
+            productOutbox.record(OutboxEvent.Operation.SAVE, product);
+        });
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Product buildNewProduct(ProductDTO productDTO) {
+        return Product.builder()
+                .id(UuidV7.next().toString())
+                .name(productDTO.getName())
+                .quantity(productDTO.getQuantity())
+                .price(productDTO.getPrice())
+                .build();
     }
 
     @Override
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#id")
     public void deleteProduct(String id, Boolean downstream) {
         try {
             if (downstream) {
                 supplyChainIntegration.deleteProduct(id);
             } else {
-                Optional<Product> product = productRepository.findById(id);
-
-                product.ifPresent(pr -> productRepository.delete(product.get()));
+                lockedWrite(Collections.singletonList(id), () -> {
+                    transactionTemplate.executeWithoutResult(status -> productRepository.findById(id).ifPresent(product -> {
+                        productRepository.delete(product);
+                        productOutbox.record(OutboxEvent.Operation.DELETE, product);
+                    }));
+                    indexRemoved(id);
+                    return null;
+                });
             }
         } catch (Exception e) {
             log.error(String.format("Error deleting productId %s", id));
-            throw new ProductException(String.format("Error deleting productId %s", id));
+            throw translate(e, String.format("Error deleting productId %s", id));
         }
     }
 
     @Override
+    @Cacheable(cacheNames = PRODUCTS_CACHE, key = "#id", unless = "#result == null")
     public Optional<ProductDTO> getProduct(String id) {
         try {
-            Optional<Product> product = productRepository.findById(id);
-            return product.isPresent() ? Optional.of(ProductUtils.parseProductEntityToDTO(product.get()))
-                    : Optional.empty();
+            return productRepository.findDTOById(id);
         } catch (Exception e) {
             log.error(String.format("Error getting productId %s", id));
             throw new ProductException(String.format("Error getting productId %s", id));
@@ -80,53 +306,263 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public ProductsDTO getProducts(Boolean downstream) {
+    public ProductsDTO getProducts(Boolean downstream, Integer limit, String after) {
         try {
 
             if (downstream) {
+                rejectPaging(limit, after);
                 return supplyChainIntegration.getProducts();
             }
 
-            Iterable<Product> all = productRepository.findAll();
-            return Optional.ofNullable(all)
-                    .map(pr -> buildProductsDTO((List<Product>) all))
+            int pageSize = resolvePageSize(limit);
+            // one extra row tells whether there is a next page without a count query
+            Pageable page = PageRequest.of(0, pageSize + 1);
+            List<ProductDTO> products = Objects.isNull(after)
+                    ? productRepository.findPage(page)
+                    : productRepository.findPageAfter(ProductUtils.decodeCursor(after), page);
+
+            return Optional.ofNullable(products)
+                    .map(pr -> buildProductsDTO(pr, pageSize))
                     .orElse(ProductsDTO.builder().bundle(Arrays.asList()).build());
 
         } catch (Exception e) {
             log.error("Error getting all products");
-            throw new ProductException("Error getting products");
+            throw translate(e, "Error getting products");
+        }
+
+    }
+
+    /**
+     * Searches the local catalog, one keyset page at a time like {@link #getProducts(Boolean, Integer, String)}.
+     *
+     * @param search filters, every given one must match
+     * @param limit  page size, capped like the catalog pages
+     * @param after  cursor returned as {@code next} by the previous page
+     * @return matching products
+     */
+    @Override
+    public ProductsDTO searchProducts(ProductSearchDTO search, Integer limit, String after) {
+        try {
+            int pageSize = resolvePageSize(limit);
+            List<ProductDTO> products = productRepository.search(search.getNamePrefix(), search.getMinPrice(),
+                    search.getMaxPrice(), search.getQuantityBelow(),
+                    Objects.isNull(after) ? null : ProductUtils.decodeCursor(after), pageSize + 1);
+            return buildProductsDTO(products, pageSize);
+        } catch (Exception e) {
+            log.error("Error searching products");
+            throw translate(e, "Error searching products");
+        }
+    }
+
+    /**
+     * Name autocomplete out of the in-memory {@link ProductNameIndex}, the database is not queried.
+     *
+     * @param prefix start of the name, any case
+     * @param limit  max number of suggestions, capped by the service
+     * @return id and name of the matching products, ordered by name
+     */
+    @Override
+    public List<ProductDTO> suggestProducts(String prefix, Integer limit) {
+        int max = Objects.isNull(limit) || limit <= 0 ? DEFAULT_SUGGESTIONS : Math.min(limit, MAX_PAGE_SIZE);
+        return productNameIndex.suggest(prefix, max);
+    }
+
+    /**
+     * Inventory aggregates out of the in-memory {@link InventorySnapshot}, the database is not queried.
+     *
+     * @param lowStockBelow quantity under which a product is low on stock, {@value #DEFAULT_LOW_STOCK} by default
+     * @param priceBuckets  prices splitting the price histogram, {@link #DEFAULT_PRICE_BUCKETS} by default
+     * @return {@link InventoryStatsDTO}
+     */
+    @Override
+    public InventoryStatsDTO getInventoryStats(Integer lowStockBelow, List<BigDecimal> priceBuckets) {
+        return inventorySnapshot.stats(Objects.isNull(lowStockBelow) ? DEFAULT_LOW_STOCK : lowStockBelow,
+                Objects.isNull(priceBuckets) || priceBuckets.isEmpty() ? DEFAULT_PRICE_BUCKETS : priceBuckets);
+    }
+
+    /**
+     * Writes the whole local catalog as NDJSON, one product per line, while it is read from the database.
+     * Rows come as DTOs, so the persistence context does not grow with the catalog.
+     *
+     * @param outputStream response body
+     * @throws IOException if the client goes away
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportProducts(OutputStream outputStream) throws IOException {
+        try (Stream<ProductDTO> products = productRepository.streamAll()) {
+            Iterator<ProductDTO> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                outputStream.write(mapper.writeValueAsBytes(iterator.next()));
+                outputStream.write(NDJSON_SEPARATOR);
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * The supply chain answers its whole catalog in one response, there are no pages to ask for.
+     */
+    private static void rejectPaging(Integer limit, String after) {
+        if (Objects.nonNull(limit) || Objects.nonNull(after)) {
+            throw new InvalidRequestException("limit and after do not apply to downstream products");
         }
+    }
 
+    private int resolvePageSize(Integer limit) {
+        if (Objects.isNull(limit) || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
     }
 
-    private ProductsDTO buildProductsDTO(List<Product> products) {
-        return ProductsDTO.builder().bundle(products.stream()
-                .map(product -> ProductUtils.parseProductEntityToDTO(product))
-                .collect(Collectors.toList())).build();
+    private ProductsDTO buildProductsDTO(List<ProductDTO> products, int pageSize) {
+        boolean hasNext = products.size() > pageSize;
+        List<ProductDTO> pageContent = hasNext ? products.subList(0, pageSize) : products;
+
+        return ProductsDTO.builder()
+                .bundle(pageContent)
+                .next(hasNext ? ProductUtils.encodeCursor(pageContent.get(pageSize - 1).getId()) : null)
+                .build();
     }
 
+    /**
+     * Updates the local product with a single UPDATE statement, nothing is read first. When the body carries a
+     * version the update only applies to the product at that version, and a product changed in the meantime
+     * fails with {@link ProductConflictException}. Without a version the update is unconditional and the new
+     * version is not known, so it is left out of the answer.
+     *
+     * @param productDTO new values of the product, with the version they are based on
+     * @param id         id of the product
+     * @param downstream indicates if the product should be updated on the downstream service
+     * @return updated product
+     */
     @Override
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#id")
     public Optional<ProductDTO> updateProduct(ProductDTO productDTO, String id, Boolean downstream) {
 
         if (downstream) {
             return supplyChainIntegration.updateProduct(productDTO, id);
         }
-        Optional<Product> product = productRepository.findById(id);
-
-        if (product.isPresent()) {
-            Product productToSave = Product.builder()
-                    .id(id)
-                    .name(productDTO.getName())
-                    .quantity(productDTO.getQuantity())
-                    .price(productDTO.getPrice())
-                    .build();
-            Product productSaved = productRepository.save(productToSave);
+        Long version = productDTO.getVersion();
+        Product productToSave = Product.builder()
+                .id(id)
+                .name(productDTO.getName())
+                .quantity(productDTO.getQuantity())
+                .price(productDTO.getPrice())
+                .version(Objects.isNull(version) ? null : version + 1)
+                .build();
+        boolean updated = lockedWrite(Collections.singletonList(id), () -> {
+            Boolean committed = transactionTemplate.execute(status -> {
+                int rows = Objects.isNull(version)
+                        ? productRepository.updateById(id, productToSave.getName(), productToSave.getPrice(), productToSave.getQuantity())
+                        : productRepository.updateByIdAndVersion(id, version, productToSave.getName(), productToSave.getPrice(),
+                        productToSave.getQuantity());
+                if (rows == 0) {
+                    return false;
+                }
+                productOutbox.record(OutboxEvent.Operation.UPDATE, productToSave);
+                return true;
+            });
+            if (Boolean.TRUE.equals(committed)) {
+                indexWritten(productToSave);
+            }
+            return Boolean.TRUE.equals(committed);
+        });
 
-            return Optional.of(ProductUtils.parseProductEntityToDTO(productSaved));
-        } else {
-            String msj = String.format("Product with id %s wasn't found", id);
+        if (updated) {
+            return Optional.of(ProductUtils.parseProductEntityToDTO(productToSave));
+        }
+        // only failed updates pay for telling a missing product from a stale version
+        if (Objects.nonNull(version) && productRepository.existsById(id)) {
+            String msj = String.format("Product with id %s was changed since version %d", id, version);
             log.info(msj);
-            throw new ProductException(msj);
+            throw new ProductConflictException(msj);
+        }
+        String msj = String.format("Product with id %s wasn't found", id);
+        log.info(msj);
+        throw new ProductException(msj);
+    }
+
+    /**
+     * Only differs from {@link #saveProduct(ProductDTO, Boolean)} when the call goes downstream, the local
+     * database path completes on the caller thread. The same holds for the other asynchronous variants.
+     *
+     * @param productDTO product to create
+     * @param downstream indicates if the product should be created on the downstream service
+     * @return future completed with the created product
+     */
+    @Override
+    public CompletableFuture<ProductDTO> saveProductAsync(ProductDTO productDTO, Boolean downstream) {
+        if (!downstream) {
+            return CompletableFuture.completedFuture(saveProduct(productDTO, false));
+        }
+        return asyncSupplyChainIntegration.saveProduct(productDTO)
+                .exceptionally(e -> {
+                    log.error(String.format("Error saving product %s", productDTO.getName()));
+                    throw translate(e, String.format("Error saving product %s", productDTO.getName()));
+                });
+    }
+
+    @Override
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#id")
+    public CompletableFuture<Void> deleteProductAsync(String id, Boolean downstream) {
+        if (!downstream) {
+            deleteProduct(id, false);
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncSupplyChainIntegration.deleteProduct(id)
+                .exceptionally(e -> {
+                    log.error(String.format("Error deleting productId %s", id));
+                    throw translate(e, String.format("Error deleting productId %s", id));
+                });
+    }
+
+    @Override
+    public CompletableFuture<ProductsDTO> getProductsAsync(Boolean downstream, Integer limit, String after) {
+        if (!downstream) {
+            return CompletableFuture.completedFuture(getProducts(false, limit, after));
+        }
+        rejectPaging(limit, after);
+        return asyncSupplyChainIntegration.getProducts()
+                .exceptionally(e -> {
+                    log.error("Error getting all products");
+                    throw translate(e, "Error getting products");
+                });
+    }
+
+    @Override
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#id")
+    public CompletableFuture<Optional<ProductDTO>> updateProductAsync(ProductDTO productDTO, String id, Boolean downstream) {
+        if (!downstream) {
+            return CompletableFuture.completedFuture(updateProduct(productDTO, id, false));
+        }
+        return asyncSupplyChainIntegration.updateProduct(productDTO, id);
+    }
+
+    /**
+     * Failures with a status of their own pass through to the API: a full bulkhead or an open circuit breaker
+     * (503), a timeout (504), a supplier error (502), an invalid request (400) and the product exceptions. A supplier
+     * 404 and anything else become a {@link ProductException} with the given message.
+     *
+     * @param e       failure, possibly wrapped in a {@link CompletionException}
+     * @param message message of the {@link ProductException}
+     * @return exception to throw, a {@link CompletionException} for checked causes
+     */
+    private static RuntimeException translate(Throwable e, String message) {
+        Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+        if (cause instanceof SupplyChainErrorException
+                && HttpStatus.NOT_FOUND.equals(((SupplyChainErrorException) cause).getHttpStatus())) {
+            return new ProductException(message);
+        }
+        if (cause instanceof SupplyChainErrorException || cause instanceof BulkheadFullException
+                || cause instanceof CallNotPermittedException || cause instanceof ProductException
+                || cause instanceof ProductConflictException || cause instanceof InvalidRequestException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof TimeoutException) {
+            return new CompletionException(cause);
         }
+        return new ProductException(message);
     }
 }
@@ -0,0 +1,210 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.MirroredProduct;
+import com.waes.phillips.products.data.repository.MirroredProductRepository;
+import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.integration.impl.SupplyChainMirror;
+import com.waes.phillips.products.model.ProductDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link SupplyChainMirror} up to date with the downstream catalog.
+ * <p>
+ * Every sync streams the catalog and compares each product with the fingerprint stored for it, only new and changed
+ * products are written and products no longer in the catalog are deleted, in transactions of
+ * {@code supply.chain.mirror.chunk.size} products. Products a downstream write put in the mirror after the sync
+ * started are newer than the catalog it streams, so they are neither replaced nor deleted. The mirror is marked as
+ * synced once the whole catalog went through, a failed sync leaves it aging until the next one succeeds.
+ */
+@Component
+@ConditionalOnProperty(name = "supply.chain.mirror.enabled", havingValue = "true")
+@Slf4j
+public class SupplyChainMirrorSync {
+
+    public static final String SYNC_METRIC = "supply.chain.mirror.sync";
+    public static final String CHANGES_METRIC = "supply.chain.mirror.changes";
+
+    // marks the products already seen in the catalog, a product listed twice is only written once
+    private static final String SEEN = "";
+
+    private final SupplyChainIntegration supplyChainIntegration;
+    private final SupplyChainMirror mirror;
+    private final MirroredProductRepository mirroredProductRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+    private final Timer syncTimer;
+    private final Duration syncInterval;
+    private final int chunkSize;
+    private final Clock clock;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public SupplyChainMirrorSync(SupplyChainIntegration supplyChainIntegration,
+                                 SupplyChainMirror mirror,
+                                 MirroredProductRepository mirroredProductRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 EntityManager entityManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${supply.chain.mirror.sync.millis}") long syncMillis,
+                                 @Value("${supply.chain.mirror.chunk.size}") int chunkSize) {
+        this(supplyChainIntegration, mirror, mirroredProductRepository, transactionTemplate, entityManager, meterRegistry,
+                Duration.ofMillis(syncMillis), chunkSize, Clock.systemUTC());
+    }
+
+    public SupplyChainMirrorSync(SupplyChainIntegration supplyChainIntegration,
+                                 SupplyChainMirror mirror,
+                                 MirroredProductRepository mirroredProductRepository,
+                                 TransactionTemplate transactionTemplate,
+                                 EntityManager entityManager,
+                                 MeterRegistry meterRegistry,
+                                 Duration syncInterval,
+                                 int chunkSize,
+                                 Clock clock) {
+        this.supplyChainIntegration = supplyChainIntegration;
+        this.mirror = mirror;
+        this.mirroredProductRepository = mirroredProductRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.meterRegistry = meterRegistry;
+        this.syncTimer = Timer.builder(SYNC_METRIC)
+                .description("Duration of the syncs of the mirror")
+                .register(meterRegistry);
+        this.syncInterval = syncInterval;
+        this.chunkSize = chunkSize;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "supply-chain-mirror-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, 0, syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Downstream catalog mirrored every {}ms", syncInterval.toMillis());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Brings the mirror in line with the downstream catalog.
+     *
+     * @return number of products inserted, updated or deleted
+     */
+    public long sync() {
+        return syncTimer.record(() -> {
+            Instant startedAt = clock.instant();
+            Map<String, String> fingerprints = new HashMap<>();
+            mirroredProductRepository.findAllFingerprints()
+                    .forEach(row -> fingerprints.put((String) row[0], (String) row[1]));
+
+            List<MirroredProduct> changed = new ArrayList<>(chunkSize);
+            Set<String> inserted = new HashSet<>();
+            long[] counts = new long[2];
+            supplyChainIntegration.forEachProduct(productDTO -> {
+                if (Objects.isNull(productDTO) || Objects.isNull(productDTO.getId())) {
+                    return;
+                }
+                String previous = fingerprints.put(productDTO.getId(), SEEN);
+                if (SEEN.equals(previous) || SupplyChainMirror.fingerprint(productDTO).equals(previous)) {
+                    return;
+                }
+                if (Objects.isNull(previous)) {
+                    inserted.add(productDTO.getId());
+                }
+                changed.add(SupplyChainMirror.toEntity(productDTO, startedAt));
+                if (changed.size() >= chunkSize) {
+                    write(changed, inserted, startedAt, counts);
+                    changed.clear();
+                    inserted.clear();
+                }
+            });
+            write(changed, inserted, startedAt, counts);
+
+            // whatever was not in the catalog anymore
+            List<String> gone = new ArrayList<>();
+            fingerprints.forEach((id, fingerprint) -> {
+                if (!SEEN.equals(fingerprint)) {
+                    gone.add(id);
+                }
+            });
+            long deleted = 0;
+            for (int from = 0; from < gone.size(); from += chunkSize) {
+                List<String> chunk = gone.subList(from, Math.min(from + chunkSize, gone.size()));
+                Integer rows = transactionTemplate.execute(status -> mirroredProductRepository.deleteByIdInWrittenBefore(chunk, startedAt));
+                deleted += Objects.isNull(rows) ? 0 : rows;
+            }
+
+            mirror.markSynced(startedAt);
+            meterRegistry.counter(CHANGES_METRIC, "change", "inserted").increment(counts[0]);
+            meterRegistry.counter(CHANGES_METRIC, "change", "updated").increment(counts[1]);
+            meterRegistry.counter(CHANGES_METRIC, "change", "deleted").increment(deleted);
+            log.info("Mirror synced: {} inserted, {} updated, {} deleted", counts[0], counts[1], deleted);
+            return counts[0] + counts[1] + deleted;
+        });
+    }
+
+    /**
+     * Replaces the changed products in one transaction: a single delete of their old rows, then batched inserts.
+     * Products written since the sync started keep their newer row. {@code counts} adds up the inserted and updated
+     * products.
+     */
+    private void write(List<MirroredProduct> changed, Set<String> inserted, Instant startedAt, long[] counts) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(changed.size());
+        changed.forEach(product -> ids.add(product.getId()));
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<String> newer = new HashSet<>(mirroredProductRepository.findIdsWrittenSince(ids, startedAt));
+            mirroredProductRepository.deleteByIdInWrittenBefore(ids, startedAt);
+            changed.stream()
+                    .filter(product -> !newer.contains(product.getId()))
+                    .forEach(product -> {
+                        entityManager.persist(product);
+                        counts[inserted.contains(product.getId()) ? 0 : 1]++;
+                    });
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.error("Error syncing the mirror, it is {} old", mirror.lag().map(Duration::toString).orElse("never synced"), e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.waes.phillips.products.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+
+/**
+ * {@link SSLContext} counting the TLS connections opened by the {@link java.net.http.HttpClient} using it.
+ * The client creates one {@link SSLEngine} per connection, so comparing this counter with the number of
+ * responses tells how often pooled or multiplexed connections were reused instead of paying a new handshake.
+ */
+public class ConnectionCountingSSLContext extends SSLContext {
+
+    public static final String CONNECTIONS_METRIC = "supply.chain.http.connections.opened";
+
+    public ConnectionCountingSSLContext(SSLContext delegate, MeterRegistry meterRegistry) {
+        super(new CountingSpi(delegate, Counter.builder(CONNECTIONS_METRIC)
+                .description("TLS connections opened to the supply chain API")
+                .register(meterRegistry)), delegate.getProvider(), delegate.getProtocol());
+    }
+
+    private static class CountingSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+        private final Counter connections;
+
+        private CountingSpi(SSLContext delegate, Counter connections) {
+            this.delegate = delegate;
+            this.connections = connections;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom secureRandom)
+                throws KeyManagementException {
+            delegate.init(keyManagers, trustManagers, secureRandom);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            connections.increment();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            connections.increment();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.waes.phillips.products.utils;
+
+import java.time.Duration;
+
+/**
+ * Time budget of a downstream operation, shared by every attempt made for it. Attempts are given what is left
+ * of the budget as their timeout, and no retry is started that could not finish before it runs out.
+ */
+public final class Deadline {
+
+    /**
+     * No budget, attempts are only bounded by the request timeout.
+     */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long expiresAtNanos;
+    private final boolean bounded;
+
+    private Deadline(long expiresAtNanos, boolean bounded) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Deadline expiring once the given budget has elapsed from now.
+     *
+     * @param budget time allowed for the operation
+     * @return {@link Deadline}
+     */
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos(), true);
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Time left before the deadline, never negative.
+     *
+     * @return remaining time, or the maximum duration for {@link #NONE}
+     */
+    public Duration remaining() {
+        if (!bounded) {
+            return Duration.ofNanos(Long.MAX_VALUE);
+        }
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return remaining().isZero();
+    }
+
+    /**
+     * Whether something taking the given time would still end before the deadline.
+     *
+     * @param duration expected duration, e.g. the wait before a retry
+     * @return true when there is more time left than the duration
+     */
+    public boolean allows(Duration duration) {
+        return remaining().compareTo(duration) > 0;
+    }
+
+    /**
+     * Shortens the timeout so it does not go past the deadline.
+     *
+     * @param timeout timeout that would apply without a deadline
+     * @return the shorter of the timeout and the remaining time
+     */
+    public Duration cap(Duration timeout) {
+        Duration remaining = remaining();
+        return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+}
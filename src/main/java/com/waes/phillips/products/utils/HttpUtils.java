@@ -1,47 +1,104 @@
 package com.waes.phillips.products.utils;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.waes.phillips.products.exception.SupplyChainErrorException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import java.net.http.HttpResponse;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 @Slf4j
 @Component
 public class HttpUtils {
 
+    public static final String RESPONSES_METRIC = "supply.chain.http.responses";
+    public static final String RETRIES_METRIC = "supply.chain.http.retries";
+    public static final String RETRY_BUDGET_EXHAUSTED_METRIC = "supply.chain.http.retry.budget.exhausted";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final int NO_CONTENT = 204;
+    private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30000;
+
     private HttpClient client;
-    private static ObjectMapper mapper;
-    private static Retry retry;
+    private final ObjectMapper mapper;
+    private final Retry retry;
+    private final ScheduledExecutorService retryScheduler;
+    private final Duration requestTimeout;
+    private final MeterRegistry meterRegistry;
+    private final RetryBudget retryBudget;
+    private final RequestHedger requestHedger;
+
+    public HttpUtils(ObjectMapper mapper,
+                     Retry retry,
+                     ScheduledExecutorService retryScheduler) {
+        this(mapper, retry, retryScheduler, HttpClient.newHttpClient(), DEFAULT_REQUEST_TIMEOUT_MILLIS,
+                new SimpleMeterRegistry(), RetryBudget.unlimited(), RequestHedger.disabled());
+    }
 
+    @Autowired
     public HttpUtils(ObjectMapper mapper,
-                     Retry retry) {
-        this.client = HttpClient.newHttpClient();
+                     Retry retry,
+                     ScheduledExecutorService retryScheduler,
+                     HttpClient supplyChainHttpClient,
+                     @Value("${supply.chain.http.request.timeout.millis}") long requestTimeoutMillis,
+                     MeterRegistry meterRegistry,
+                     RetryBudget retryBudget,
+                     RequestHedger requestHedger) {
+        this.client = supplyChainHttpClient;
         this.mapper = mapper;
+        this.retryScheduler = retryScheduler;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.meterRegistry = meterRegistry;
+        this.retryBudget = retryBudget;
+        this.requestHedger = requestHedger;
         this.retry = retry;
     }
 
     public <T> T executeGetRequest(String url, Class<T> clazz) {
+        return executeGetRequest(url, clazz, Deadline.NONE);
+    }
+
+    /**
+     * GET retried within the deadline, every attempt times out at the latest when the deadline does. Slow
+     * attempts are hedged when hedging is enabled.
+     *
+     * @param url resource url
+     * @param clazz response type
+     * @param deadline time budget of the whole call, retries included
+     * @return response body
+     */
+    public <T> T executeGetRequest(String url, Class<T> clazz, Deadline deadline) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .GET()
-                    .build();
-            Supplier<T> getRequestSupplier = () -> executeRequest(request, clazz);
-            Supplier<T> retryingGetRequest = Retry.decorateSupplier(retry, getRequestSupplier);
-            return retryingGetRequest.get();
+            return executeWithRetry(new URI(url), deadline, HttpRequest.Builder::GET, clazz, true);
         } catch (URISyntaxException e) {
             log.error("Failed to execute request to url {}.", url, e);
             throw new SupplyChainErrorException("Failed to access resource");
@@ -50,13 +107,20 @@ public class HttpUtils {
     }
 
     public <T, R> R executePostRequest(String url, T body, Class<R> clazz) {
+        return executePostRequest(url, body, clazz, Deadline.NONE);
+    }
+
+    /**
+     * POST retried like a GET, every attempt carrying the same idempotency key so the supplier applies the
+     * write only once.
+     */
+    public <T, R> R executePostRequest(String url, T body, Class<R> clazz, Deadline deadline) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body)))
-                    .build();
+            HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body));
+            String idempotencyKey = newIdempotencyKey();
 
-            return executeRequest(request, clazz);
+            return executeWithRetry(new URI(url), deadline,
+                    builder -> builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey).POST(bodyPublisher), clazz, false);
         } catch (IOException e) {
             log.error("Failed to serialize the request body into {} object.", clazz.getName(), e);
             throw new SupplyChainErrorException(String.format("Failed to serialize the request body into %s object.", clazz.getName()));
@@ -67,12 +131,14 @@ public class HttpUtils {
     }
 
     public <T> T executeDeleteRequest(String url, Class<T> clazz) {
+        return executeDeleteRequest(url, clazz, Deadline.NONE);
+    }
+
+    public <T> T executeDeleteRequest(String url, Class<T> clazz, Deadline deadline) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .DELETE()
-                    .build();
-            return executeRequest(request, clazz);
+            String idempotencyKey = newIdempotencyKey();
+            return executeWithRetry(new URI(url), deadline,
+                    builder -> builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey).DELETE(), clazz, false);
         } catch (URISyntaxException e) {
             log.error("There is an error deleting product in URL {}", url, e);
             throw new SupplyChainErrorException(String.format("There is an error deleting product in URL %s", url));
@@ -82,11 +148,15 @@ public class HttpUtils {
 
     public <T> T executeRequest(HttpRequest request, Class<T> clazz) {
         log.info(String.format("Executing request to url %s.", request.uri()));
-        HttpResponse response;
+        HttpResponse<InputStream> response;
         try {
-            response = client.send(request, java.net.http.HttpResponse.BodyHandlers.ofString());
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            recordResponse(response);
 
-            return parseResponseBody(response.body().toString(), clazz);
+            try (InputStream body = response.body()) {
+                checkStatus(request, response.statusCode());
+                return response.statusCode() == NO_CONTENT ? null : parseResponseBody(body, clazz);
+            }
         } catch (IOException e) {
             log.error("Failed to execute request to url {}.", request.uri(), e);
             throw new SupplyChainErrorException("Failed to access resource");
@@ -96,7 +166,298 @@ public class HttpUtils {
         }
     }
 
-    private <T> T parseResponseBody(String responseBody, Class<T> clazz) {
+    /**
+     * GET whose response holds an array field that is handed to the consumer one element at a time, so the
+     * whole array is never held in memory. Not retried, the consumer may already have seen part of the body.
+     *
+     * @param url resource url
+     * @param arrayField name of the array field of the root object, e.g. {@code bundle}
+     * @param elementClass type of the array elements
+     * @param consumer receives every non null element
+     * @return number of elements consumed
+     */
+    public <T> long executeGetRequest(String url, String arrayField, Class<T> elementClass, Consumer<T> consumer) {
+        return executeGetRequest(url, arrayField, elementClass, consumer, Deadline.NONE);
+    }
+
+    /**
+     * Streaming GET whose response has to start arriving before the deadline, the body itself is not bounded.
+     */
+    public <T> long executeGetRequest(String url, String arrayField, Class<T> elementClass, Consumer<T> consumer, Deadline deadline) {
+        try {
+            HttpRequest request = newRequest(new URI(url), deadline)
+                    .GET()
+                    .build();
+            log.info(String.format("Executing streaming request to url %s.", request.uri()));
+            retryBudget.recordRequest();
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            recordResponse(response);
+
+            try (InputStream body = response.body()) {
+                checkStatus(request, response.statusCode());
+                return parseResponseElements(body, arrayField, elementClass, consumer);
+            }
+        } catch (URISyntaxException e) {
+            log.error("Failed to execute request to url {}.", url, e);
+            throw new SupplyChainErrorException("Failed to access resource");
+        } catch (IOException e) {
+            log.error("Failed to execute request to url {}.", url, e);
+            throw new SupplyChainErrorException("Failed to access resource");
+        } catch (InterruptedException e) {
+            log.error("Failed to execute request to url {}.", url, e);
+            throw new SupplyChainErrorException("Failed to access resource");
+        }
+    }
+
+    /**
+     * Non blocking GET, retried asynchronously on the retry scheduler instead of sleeping on the caller thread.
+     *
+     * @param url resource url
+     * @param clazz response type
+     * @return future completed with the response body
+     */
+    public <T> CompletableFuture<T> executeGetRequestAsync(String url, Class<T> clazz) {
+        return executeGetRequestAsync(url, clazz, Deadline.NONE);
+    }
+
+    /**
+     * Non blocking GET retried within the deadline.
+     *
+     * @param url resource url
+     * @param clazz response type
+     * @param deadline time budget of the whole call, retries included
+     * @return future completed with the response body
+     */
+    public <T> CompletableFuture<T> executeGetRequestAsync(String url, Class<T> clazz, Deadline deadline) {
+        try {
+            return executeWithRetryAsync(new URI(url), deadline, HttpRequest.Builder::GET, clazz, true);
+        } catch (URISyntaxException e) {
+            log.error("Failed to execute request to url {}.", url, e);
+            return CompletableFuture.failedFuture(new SupplyChainErrorException("Failed to access resource"));
+        }
+    }
+
+    public <T, R> CompletableFuture<R> executePostRequestAsync(String url, T body, Class<R> clazz) {
+        return executePostRequestAsync(url, body, clazz, Deadline.NONE);
+    }
+
+    public <T, R> CompletableFuture<R> executePostRequestAsync(String url, T body, Class<R> clazz, Deadline deadline) {
+        try {
+            HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(body));
+            String idempotencyKey = newIdempotencyKey();
+
+            return executeWithRetryAsync(new URI(url), deadline,
+                    builder -> builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey).POST(bodyPublisher), clazz, false);
+        } catch (IOException e) {
+            log.error("Failed to serialize the request body into {} object.", clazz.getName(), e);
+            return CompletableFuture.failedFuture(new SupplyChainErrorException(String.format("Failed to serialize the request body into %s object.", clazz.getName())));
+        } catch (URISyntaxException e) {
+            log.error("There is an error in URL {}", url, e);
+            return CompletableFuture.failedFuture(new SupplyChainErrorException(String.format("There is an error in URL %s", url)));
+        }
+    }
+
+    public <T> CompletableFuture<T> executeDeleteRequestAsync(String url, Class<T> clazz) {
+        return executeDeleteRequestAsync(url, clazz, Deadline.NONE);
+    }
+
+    public <T> CompletableFuture<T> executeDeleteRequestAsync(String url, Class<T> clazz, Deadline deadline) {
+        try {
+            String idempotencyKey = newIdempotencyKey();
+            return executeWithRetryAsync(new URI(url), deadline,
+                    builder -> builder.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey).DELETE(), clazz, false);
+        } catch (URISyntaxException e) {
+            log.error("There is an error deleting product in URL {}", url, e);
+            return CompletableFuture.failedFuture(new SupplyChainErrorException(String.format("There is an error deleting product in URL %s", url)));
+        }
+    }
+
+    public <T> CompletableFuture<T> executeRequestAsync(HttpRequest request, Class<T> clazz) {
+        log.info(String.format("Executing async request to url %s.", request.uri()));
+        CompletableFuture<HttpResponse<byte[]>> exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<T> result = exchange
+                .handle((response, e) -> {
+                    if (Objects.nonNull(e)) {
+                        log.error("Failed to execute request to url {}.", request.uri(), e);
+                        throw new SupplyChainErrorException("Failed to access resource");
+                    }
+                    recordResponse(response);
+                    checkStatus(request, response.statusCode());
+                    return response.statusCode() == NO_CONTENT ? null : parseResponseBody(response.body(), clazz);
+                });
+        // a cancelled result, e.g. a hedge that lost, aborts the exchange on the JDKs whose HttpClient supports it
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sends the request, retrying it while the retry, the deadline and the retry budget allow. The request is
+     * built again for every attempt, so its timeout is what is left of the deadline when the attempt starts.
+     * Attempts of hedged requests are sent asynchronously so a slow one can be raced by its hedge.
+     */
+    private <T> T executeWithRetry(URI uri, Deadline deadline, UnaryOperator<HttpRequest.Builder> method, Class<T> clazz, boolean hedged) {
+        AtomicBoolean firstAttempt = new AtomicBoolean(true);
+        Supplier<T> attempt = () -> {
+            recordAttempt(firstAttempt);
+            HttpRequest request = method.apply(newRequest(uri, deadline)).build();
+            if (hedged && requestHedger.isEnabled()) {
+                return join(requestHedger.execute(() -> executeRequestAsync(request, clazz)));
+            }
+            return executeRequest(request, clazz);
+        };
+        Retry.AsyncContext<T> context = retry.asyncContext();
+        while (true) {
+            try {
+                T result = attempt.get();
+                context.onComplete();
+                return result;
+            } catch (RuntimeException e) {
+                long wait = nextWait(context, e, deadline);
+                if (wait < 0) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> executeWithRetryAsync(URI uri, Deadline deadline, UnaryOperator<HttpRequest.Builder> method, Class<T> clazz, boolean hedged) {
+        AtomicBoolean firstAttempt = new AtomicBoolean(true);
+        Supplier<CompletionStage<T>> attempt = () -> {
+            recordAttempt(firstAttempt);
+            try {
+                HttpRequest request = method.apply(newRequest(uri, deadline)).build();
+                return hedged ? requestHedger.execute(() -> executeRequestAsync(request, clazz)) : executeRequestAsync(request, clazz);
+            } catch (SupplyChainErrorException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(attempt, retry.asyncContext(), deadline, result);
+        return result;
+    }
+
+    /**
+     * Sends one attempt and completes the result with it, or schedules the next attempt on the retry scheduler.
+     */
+    private <T> void attemptAsync(Supplier<CompletionStage<T>> attempt, Retry.AsyncContext<T> context, Deadline deadline,
+                                  CompletableFuture<T> result) {
+        CompletionStage<T> sent;
+        try {
+            sent = attempt.get();
+        } catch (RuntimeException e) {
+            // thrown while building or sending the attempt, possibly on the retry scheduler where nobody would see it
+            result.completeExceptionally(e);
+            return;
+        }
+        sent.whenComplete((value, error) -> {
+            if (Objects.isNull(error)) {
+                context.onComplete();
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && Objects.nonNull(error.getCause()) ? error.getCause() : error;
+            long wait = nextWait(context, cause, deadline);
+            if (wait < 0) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            try {
+                retryScheduler.schedule(() -> attemptAsync(attempt, context, deadline, result), wait, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // e.g. rejected while shutting down: fail with the error instead of leaving the caller waiting
+                log.warn("Could not schedule the retry of a failed attempt.", e);
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void recordAttempt(AtomicBoolean firstAttempt) {
+        if (firstAttempt.getAndSet(false)) {
+            retryBudget.recordRequest();
+        } else {
+            retryBudget.recordRetry();
+            meterRegistry.counter(RETRIES_METRIC).increment();
+        }
+    }
+
+    private String newIdempotencyKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Every attempt gets the configured request timeout, shortened to what is left of the deadline, so a
+     * supplier that stops answering fails the request instead of holding the caller.
+     */
+    private HttpRequest.Builder newRequest(URI uri, Deadline deadline) {
+        // read the deadline once, a zero timeout is rejected by the builder
+        Duration timeout = deadline.cap(requestTimeout);
+        if (timeout.isZero()) {
+            log.error("Deadline exceeded before calling url {}.", uri);
+            throw new SupplyChainErrorException(String.format("Deadline exceeded before calling url %s", uri), HttpStatus.GATEWAY_TIMEOUT);
+        }
+        return HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(timeout);
+    }
+
+    /**
+     * Wait before the next attempt of the call the context belongs to, -1 when the error is not retried. The retry
+     * decides first, counting the attempts of the call, then a bounded deadline refuses the retry when that attempt's
+     * own wait would not leave time to send it.
+     */
+    private long nextWait(Retry.AsyncContext<?> context, Throwable error, Deadline deadline) {
+        long wait = context.onError(error);
+        if (wait >= 0 && !deadline.allows(Duration.ofMillis(wait))) {
+            log.warn("Not retrying, waiting {}ms would go past the deadline.", wait);
+            return -1;
+        }
+        return wait;
+    }
+
+    /**
+     * Counts responses by protocol version, to be read against the opened connections counter.
+     */
+    private void recordResponse(HttpResponse<?> response) {
+        meterRegistry.counter(RESPONSES_METRIC, "version", response.version().name()).increment();
+    }
+
+    /**
+     * Fails the request when the supplier answers with an error status, keeping the status so callers can
+     * tell a missing resource from an unavailable supplier.
+     */
+    private void checkStatus(HttpRequest request, int statusCode) {
+        if (statusCode >= 400) {
+            HttpStatus httpStatus = Optional.ofNullable(HttpStatus.resolve(statusCode)).orElse(HttpStatus.INTERNAL_SERVER_ERROR);
+            log.error("Request to url {} failed with status {}.", request.uri(), statusCode);
+            throw new SupplyChainErrorException(String.format("Request to url %s failed with status %d", request.uri(), statusCode), httpStatus);
+        }
+    }
+
+    /**
+     * Deserializes the body straight from the response stream, without an intermediate String.
+     */
+    public <T> T parseResponseBody(InputStream responseBody, Class<T> clazz) {
         if (Objects.nonNull(responseBody)) {
             try {
                 return mapper.readValue(responseBody, clazz);
@@ -108,4 +469,51 @@ public class HttpUtils {
         return null;
     }
 
+    /**
+     * Deserializes a body already received as UTF-8 bytes, without decoding it to a String first.
+     */
+    public <T> T parseResponseBody(byte[] responseBody, Class<T> clazz) {
+        if (Objects.nonNull(responseBody)) {
+            try {
+                return mapper.readValue(responseBody, clazz);
+            } catch (IOException e) {
+                log.error(String.format("Failed to deserialize the response body into %s object.", clazz.getName()), e);
+                throw new SupplyChainErrorException(String.format("Failed to deserialize the response body into %s object.", clazz.getName()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Walks the body with Jackson's streaming parser and binds only the elements of the given array field,
+     * one at a time. Any other field of the root object is skipped.
+     */
+    public <T> long parseResponseElements(InputStream responseBody, String arrayField, Class<T> elementClass, Consumer<T> consumer) {
+        long count = 0;
+        try (JsonParser parser = mapper.getFactory().createParser(responseBody)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new SupplyChainErrorException(String.format("Failed to deserialize the response body into %s objects.", elementClass.getName()));
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (arrayField.equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        T element = mapper.readValue(parser, elementClass);
+                        if (Objects.nonNull(element)) {
+                            consumer.accept(element);
+                            count++;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            log.error(String.format("Failed to deserialize the response body into %s objects.", elementClass.getName()), e);
+            throw new SupplyChainErrorException(String.format("Failed to deserialize the response body into %s objects.", elementClass.getName()));
+        }
+    }
+
 }
@@ -1,8 +1,12 @@
 package com.waes.phillips.products.utils;
 
 import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.exception.InvalidRequestException;
 import com.waes.phillips.products.model.ProductDTO;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 public class ProductUtils {
 
     public static ProductDTO parseProductEntityToDTO(Product product) {
@@ -10,7 +14,8 @@ public class ProductUtils {
                 .id(product.getId())
                 .name(product.getName())
                 .price(product.getPrice())
-                .quantity(product.getQuantity()).build();
+                .quantity(product.getQuantity())
+                .version(product.getVersion()).build();
     }
 
     public static Product parseProductDTOToEntity(ProductDTO productDTO) {
@@ -18,8 +23,33 @@ public class ProductUtils {
                 .id(productDTO.getId())
                 .name(productDTO.getName())
                 .price(productDTO.getPrice())
-                .quantity(productDTO.getQuantity()).build();
+                .quantity(productDTO.getQuantity())
+                .version(productDTO.getVersion()).build();
+    }
+
+    /**
+     * Builds the opaque cursor pointing after the given product id.
+     *
+     * @param id last product id of a page
+     * @return url safe cursor
+     */
+    public static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Reads the product id out of a cursor built by {@link #encodeCursor(String)}.
+     *
+     * @param cursor opaque cursor
+     * @return last product id of the previous page
+     * @throws InvalidRequestException if the cursor is not one built by {@link #encodeCursor(String)}
+     */
+    public static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException(String.format("Invalid cursor %s", cursor));
+        }
+    }
 
 }
@@ -0,0 +1,178 @@
+package com.waes.phillips.products.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent reads. When the first attempt has not answered after the configured percentile of recent
+ * attempt latencies, a second attempt is sent and whichever answers first wins, the other one is cancelled.
+ * <p>
+ * Hedges are limited to a share of the requests, so a supplier that is slow for everyone does not get twice the
+ * load. Only successful attempts feed the latency percentile.
+ */
+@Slf4j
+@Component
+public class RequestHedger {
+
+    public static final String LATENCY_METRIC = "supply.chain.http.hedging.latency";
+    public static final String HEDGES_METRIC = "supply.chain.http.hedges";
+    public static final String HEDGES_WON_METRIC = "supply.chain.http.hedges.won";
+
+    private static final int BUDGET_WINDOW_SECONDS = 10;
+
+    private final boolean enabled;
+    private final Duration minDelay;
+    private final RetryBudget budget;
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+    private final Timer latency;
+
+    @Autowired
+    public RequestHedger(@Value("${supply.chain.hedging.enabled}") boolean enabled,
+                         @Value("${supply.chain.hedging.percentile}") double percentile,
+                         @Value("${supply.chain.hedging.min.delay.millis}") long minDelayMillis,
+                         @Value("${supply.chain.hedging.max.ratio}") double maxRatio,
+                         MeterRegistry meterRegistry) {
+        this(enabled, percentile, Duration.ofMillis(minDelayMillis), new RetryBudget(maxRatio, 0, BUDGET_WINDOW_SECONDS),
+                enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "supply-chain-hedging");
+                    thread.setDaemon(true);
+                    return thread;
+                }) : null, meterRegistry);
+    }
+
+    /**
+     * @param enabled       whether requests are hedged at all
+     * @param percentile    latency percentile of recent attempts after which the hedge is sent, e.g. 0.95
+     * @param minDelay      lower bound of the hedge delay, also used before any latency has been recorded
+     * @param budget        share of the requests that may be hedged
+     * @param scheduler     scheduler of the hedges, unused when disabled
+     * @param meterRegistry registry of the hedging metrics
+     */
+    public RequestHedger(boolean enabled, double percentile, Duration minDelay, RetryBudget budget,
+                         ScheduledExecutorService scheduler, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minDelay = minDelay;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.meterRegistry = meterRegistry;
+        this.latency = Timer.builder(LATENCY_METRIC)
+                .publishPercentiles(percentile)
+                .register(meterRegistry);
+        if (enabled) {
+            log.info("Supply chain reads hedged after the p{} latency, at least {}ms", percentile * 100, minDelay.toMillis());
+        }
+    }
+
+    /**
+     * Hedger that never hedges.
+     *
+     * @return {@link RequestHedger}
+     */
+    public static RequestHedger disabled() {
+        return new RequestHedger(false, 0.95, Duration.ZERO, RetryBudget.unlimited(), null, new SimpleMeterRegistry());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs the attempt, hedging it with a second one when it is slow.
+     *
+     * @param attempt sends one attempt of an idempotent request
+     * @return future completed by the first attempt that succeeds, or failed when all of them fail
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        if (!enabled) {
+            return attempt.get();
+        }
+        budget.recordRequest();
+        CompletableFuture<T> first = timed(attempt);
+        if (first.isDone()) {
+            return first;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        relay(first, result, outstanding, false);
+        ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+            if (result.isDone() || !budget.canRetry()
+                    || outstanding.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+                return;
+            }
+            budget.recordRetry();
+            meterRegistry.counter(HEDGES_METRIC).increment();
+            CompletableFuture<T> second = timed(attempt);
+            relay(second, result, outstanding, true);
+            result.whenComplete((value, e) -> second.cancel(true));
+        }, hedgeDelay().toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((value, e) -> {
+            hedge.cancel(false);
+            first.cancel(true);
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (Objects.nonNull(scheduler)) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private Duration hedgeDelay() {
+        ValueAtPercentile[] percentiles = latency.takeSnapshot().percentileValues();
+        long percentileMillis = percentiles.length == 0 ? 0 : (long) percentiles[0].value(TimeUnit.MILLISECONDS);
+        return Duration.ofMillis(Math.max(minDelay.toMillis(), percentileMillis));
+    }
+
+    private <T> CompletableFuture<T> timed(Supplier<CompletableFuture<T>> attempt) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, e) -> {
+            if (Objects.isNull(e)) {
+                latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completes the result with the first success, and with the failure of the last attempt when none succeeds.
+     */
+    private <T> void relay(CompletableFuture<T> attempt, CompletableFuture<T> result, AtomicInteger outstanding, boolean hedged) {
+        attempt.whenComplete((value, e) -> {
+            boolean last = outstanding.decrementAndGet() == 0;
+            if (Objects.isNull(e)) {
+                if (result.complete(value) && hedged) {
+                    meterRegistry.counter(HEDGES_WON_METRIC).increment();
+                }
+            } else if (last) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+}
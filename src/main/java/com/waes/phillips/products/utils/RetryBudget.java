@@ -0,0 +1,105 @@
+package com.waes.phillips.products.utils;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.function.Predicate;
+
+/**
+ * Caps retries to a share of the requests sent over a sliding window, shared by every downstream operation.
+ * While the supplier is healthy the few retries fit in the budget, during an incident every request fails and
+ * the budget runs out, so retries stop multiplying the load on the supplier.
+ * <p>
+ * A small number of retries per second is always allowed, so low traffic still gets its retries.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final int windowSeconds;
+    private final long[] requests;
+    private final long[] retries;
+    private final long[] bucketSeconds;
+
+    /**
+     * @param ratio               retries allowed per request sent, e.g. 0.1 for one retry every ten requests
+     * @param minRetriesPerSecond retries always allowed, regardless of the traffic
+     * @param windowSeconds       length of the sliding window
+     */
+    public RetryBudget(double ratio, int minRetriesPerSecond, int windowSeconds) {
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.windowSeconds = windowSeconds;
+        this.requests = new long[windowSeconds];
+        this.retries = new long[windowSeconds];
+        this.bucketSeconds = new long[windowSeconds];
+    }
+
+    /**
+     * Budget that never refuses a retry.
+     *
+     * @return {@link RetryBudget}
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(Double.MAX_VALUE, Integer.MAX_VALUE, 1);
+    }
+
+    public synchronized void recordRequest() {
+        requests[bucket(currentSecond())]++;
+    }
+
+    public synchronized void recordRetry() {
+        retries[bucket(currentSecond())]++;
+    }
+
+    /**
+     * Whether one more retry fits in the budget. Does not take it, the retry is recorded when it is sent.
+     *
+     * @return true when the retry is allowed
+     */
+    public synchronized boolean canRetry() {
+        long now = currentSecond();
+        long windowRequests = 0;
+        long windowRetries = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            if (now - bucketSeconds[i] < windowSeconds) {
+                windowRequests += requests[i];
+                windowRetries += retries[i];
+            }
+        }
+        return windowRetries < (double) minRetriesPerSecond * windowSeconds + ratio * windowRequests;
+    }
+
+    /**
+     * Limits a retry predicate to the budget: an error it retries is only retried while the budget has room.
+     *
+     * @param retryable predicate of the errors worth retrying
+     * @param exhausted counts the retries the budget refuses
+     * @return predicate for the retry configuration
+     */
+    public Predicate<Throwable> limit(Predicate<Throwable> retryable, Counter exhausted) {
+        return error -> {
+            if (!retryable.test(error)) {
+                return false;
+            }
+            if (!canRetry()) {
+                exhausted.increment();
+                return false;
+            }
+            return true;
+        };
+    }
+
+    protected long currentSecond() {
+        return System.nanoTime() / 1_000_000_000L;
+    }
+
+    private int bucket(long second) {
+        int index = (int) Math.floorMod(second, (long) windowSeconds);
+        if (bucketSeconds[index] != second) {
+            bucketSeconds[index] = second;
+            requests[index] = 0;
+            retries[index] = 0;
+        }
+        return index;
+    }
+}
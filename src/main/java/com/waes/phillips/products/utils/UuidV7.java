@@ -0,0 +1,46 @@
+package com.waes.phillips.products.utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time ordered UUIDs, version 7 of RFC 9562: the first 48 bits are the unix time in milliseconds, so new ids sort
+ * after older ones, as binary and in their string form. Inserts keyed by them land at the end of the primary key
+ * index instead of at random pages of it.
+ * <p>
+ * The 12 bits after the version hold a counter, ids generated by this process are strictly increasing even within
+ * the same millisecond. The remaining 62 bits are random.
+ */
+public final class UuidV7 {
+
+    private static final long VERSION = 7L << 12;
+    private static final long VARIANT = 2L << 62;
+    private static final int COUNTER_BITS = 12;
+
+    // unix millis shifted left by the counter bits, plus the counter
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private UuidV7() {
+    }
+
+    public static UUID next() {
+        return next(System.currentTimeMillis());
+    }
+
+    /**
+     * @param epochMillis current unix time in milliseconds
+     * @return id greater than every id generated before by this process
+     */
+    static UUID next(long epochMillis) {
+        long candidate = epochMillis << COUNTER_BITS;
+        // past 4096 ids in a millisecond the counter borrows from the next one, order is kept
+        long timeAndCounter = LAST.updateAndGet(last -> Math.max(candidate, last + 1));
+        long millis = timeAndCounter >>> COUNTER_BITS;
+        long counter = timeAndCounter & ((1L << COUNTER_BITS) - 1);
+
+        long mostSignificant = (millis << 16) | VERSION | counter;
+        long leastSignificant = VARIANT | (ThreadLocalRandom.current().nextLong() >>> 2);
+        return new UUID(mostSignificant, leastSignificant);
+    }
+}
@@ -0,0 +1,66 @@
+package com.waes.phillips.products.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HttpClientConfigurationTest {
+
+    private static final int THREADS = 2;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new HttpClientConfiguration().supplyChainHttpExecutor(THREADS,
+                new StaticListableBeanFactory().getBeanProvider(ExecutorService.class), meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void busy_executor_queues_tasks_instead_of_running_them_on_the_submitting_thread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(() -> await(release));
+        }
+
+        Thread submitter = Thread.currentThread();
+        List<Future<Thread>> queued = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queued.add(executor.submit(Thread::currentThread));
+        }
+        Assert.assertEquals(100, meterRegistry.get("executor.queued")
+                .tag("name", HttpClientConfiguration.SUPPLY_CHAIN_HTTP_METRIC).gauge().value(), 0);
+        release.countDown();
+
+        for (Future<Thread> result : queued) {
+            Thread thread = result.get(5, TimeUnit.SECONDS);
+            Assert.assertNotSame(submitter, thread);
+            Assert.assertTrue(thread.getName().startsWith("supply-chain-http-"));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.waes.phillips.products.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class VirtualThreadConfigurationTest {
+
+    private static final boolean VIRTUAL_THREADS_AVAILABLE = Runtime.version().feature() >= 21;
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadConfiguration.class);
+
+    @Test
+    public void tomcat_workers_replaced_by_executor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ProtocolHandler protocolHandler = Mockito.mock(ProtocolHandler.class);
+
+            new VirtualThreadConfiguration().virtualThreadProtocolHandlerCustomizer(executor).customize(protocolHandler);
+
+            Mockito.verify(protocolHandler).setExecutor(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void disabled_by_default() {
+        contextRunner.run(context -> Assert.assertFalse(context.containsBean(VirtualThreadConfiguration.VIRTUAL_THREAD_EXECUTOR)));
+    }
+
+    @Test
+    public void startup_fails_clearly_without_virtual_threads() {
+        if (VIRTUAL_THREADS_AVAILABLE) {
+            return;
+        }
+        IllegalStateException exception = Assertions.assertThrows(IllegalStateException.class,
+                () -> new VirtualThreadConfiguration().virtualThreadExecutor());
+        Assert.assertTrue(exception.getMessage().contains(VirtualThreadConfiguration.VIRTUAL_THREADS_PROPERTY));
+        Assert.assertTrue(exception.getMessage().contains(Runtime.version().toString()));
+
+        contextRunner.withPropertyValues(VirtualThreadConfiguration.VIRTUAL_THREADS_PROPERTY + "=true").run(context -> {
+            Throwable failure = context.getStartupFailure();
+            Assert.assertNotNull(failure);
+            while (!(failure instanceof IllegalStateException) && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            Assert.assertEquals(exception.getMessage(), failure.getMessage());
+        });
+    }
+
+    @Test
+    public void requests_run_on_virtual_threads() throws Exception {
+        if (!VIRTUAL_THREADS_AVAILABLE) {
+            return;
+        }
+        ExecutorService executor = new VirtualThreadConfiguration().virtualThreadExecutor();
+        try {
+            Object virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get();
+            Assert.assertEquals(Boolean.TRUE, virtual);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
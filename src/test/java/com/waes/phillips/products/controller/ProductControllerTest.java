@@ -1,20 +1,40 @@
 package com.waes.phillips.products.controller;
 
+import com.waes.phillips.products.exception.ExceptionHandlerAdvice;
+import com.waes.phillips.products.exception.InvalidRequestException;
+import com.waes.phillips.products.model.BulkProductResultDTO;
+import com.waes.phillips.products.model.BulkProductsResultDTO;
 import com.waes.phillips.products.model.ProductDTO;
 import com.waes.phillips.products.model.ProductsDTO;
 import com.waes.phillips.products.services.ProductService;
 import com.waes.phillips.products.services.ProductServiceImpl;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 public class ProductControllerTest {
 
@@ -36,8 +56,9 @@ public class ProductControllerTest {
 
         List<ProductDTO> products = new ArrayList<>();
         ProductsDTO productsDTO = ProductsDTO.builder().bundle(products).build();
-        Mockito.when(productService.getProducts(Boolean.FALSE)).thenReturn(productsDTO);
-        ResponseEntity responseEntity = productController.getProducts(Boolean.FALSE);
+        Mockito.when(productService.getProductsAsync(Boolean.FALSE, null, null))
+                .thenReturn(CompletableFuture.completedFuture(productsDTO));
+        ResponseEntity responseEntity = productController.getProducts(Boolean.FALSE, null, null).join();
 
         Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.OK));
         Assert.assertTrue(((ProductsDTO)responseEntity.getBody()).getBundle().isEmpty());
@@ -48,8 +69,9 @@ public class ProductControllerTest {
         List<ProductDTO> products = Arrays.asList(ProductDTO.builder().id("123")
                 .name("Product").build());
         ProductsDTO productsDTO = ProductsDTO.builder().bundle(products).build();
-        Mockito.when(productService.getProducts(Boolean.FALSE)).thenReturn(productsDTO);
-        ResponseEntity responseEntity = productController.getProducts(Boolean.FALSE);
+        Mockito.when(productService.getProductsAsync(Boolean.FALSE, null, null))
+                .thenReturn(CompletableFuture.completedFuture(productsDTO));
+        ResponseEntity responseEntity = productController.getProducts(Boolean.FALSE, null, null).join();
 
         Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.OK));
 
@@ -78,20 +100,135 @@ public class ProductControllerTest {
 
         ProductDTO productDTO = ProductDTO.builder().id("123")
                 .name("Product").build();
-        Mockito.when(productService.saveProduct(ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenReturn(productDTO);
-        ResponseEntity responseEntity = productController.saveProduct(productDTO, Boolean.FALSE);
+        Mockito.when(productService.saveProductAsync(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenReturn(CompletableFuture.completedFuture(productDTO));
+        ResponseEntity responseEntity = productController.saveProduct(productDTO, Boolean.FALSE).join();
 
         Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.CREATED));
         Assert.assertTrue(responseEntity.getBody() instanceof ProductDTO);
         Assert.assertEquals(((ProductDTO) responseEntity.getBody()).getId(), "123");
     }
 
+    @Test
+    public void success_save_products() {
+
+        List<ProductDTO> products = Arrays.asList(ProductDTO.builder().name("Product").build());
+        BulkProductsResultDTO result = BulkProductsResultDTO.builder()
+                .results(Arrays.asList(BulkProductResultDTO.builder().index(0).id("123").build())).build();
+        Mockito.when(productService.saveProducts(products)).thenReturn(result);
+
+        ResponseEntity responseEntity = productController.saveProducts(products);
+
+        Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.OK));
+        Assert.assertEquals("123", ((BulkProductsResultDTO) responseEntity.getBody()).getResults().get(0).getId());
+    }
+
+    @Test
+    public void success_export_products() throws IOException {
+
+        ResponseEntity<StreamingResponseBody> responseEntity = productController.exportProducts(new MockHttpServletRequest());
+
+        Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.OK));
+        Assert.assertEquals(ProductController.APPLICATION_NDJSON_VALUE, responseEntity.getHeaders().getContentType().toString());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        responseEntity.getBody().writeTo(outputStream);
+        Mockito.verify(productService).exportProducts(outputStream);
+    }
+
+    @Test
+    public void export_gets_its_own_timeout() throws Exception {
+        ReflectionTestUtils.setField(productController, "exportTimeoutMillis", 600000L);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(productController).build();
+
+        MvcResult export = mockMvc.perform(MockMvcRequestBuilders.get("/supply-chain")
+                        .accept(ProductController.APPLICATION_NDJSON_VALUE))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        Assert.assertEquals(600000L, export.getRequest().getAsyncContext().getTimeout());
+
+        Mockito.when(productService.getProductsAsync(Boolean.FALSE, null, null)).thenReturn(new CompletableFuture<>());
+        MvcResult page = mockMvc.perform(MockMvcRequestBuilders.get("/supply-chain"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        Assert.assertNotEquals(600000L, page.getRequest().getAsyncContext().getTimeout());
+    }
+
     @Test
     public void success_delete_product() {
 
-        Mockito.doNothing().when(productService).deleteProduct("123", Boolean.FALSE);
-        ResponseEntity responseEntity = productController.deleteProduct("123", Boolean.FALSE);
+        Mockito.when(productService.deleteProductAsync("123", Boolean.FALSE))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        ResponseEntity responseEntity = productController.deleteProduct("123", Boolean.FALSE).join();
         Assert.assertTrue(responseEntity.getStatusCode().equals(HttpStatus.NO_CONTENT));
     }
+
+    @Test
+    public void success_update_product_downstream() {
+
+        ProductDTO productDTO = ProductDTO.builder().id("123")
+                .name("Product").build();
+        CompletableFuture<Optional<ProductDTO>> pending = new CompletableFuture<>();
+        Mockito.when(productService.updateProductAsync(productDTO, "123", Boolean.TRUE)).thenReturn(pending);
+
+        CompletableFuture<ResponseEntity> response = productController.updateProduct("123", Boolean.TRUE, productDTO);
+        Assert.assertFalse(response.isDone());
+
+        pending.complete(Optional.of(productDTO));
+        Assert.assertTrue(response.join().getStatusCode().equals(HttpStatus.CREATED));
+    }
+
+    @Test
+    public void full_bulkhead_answers_service_unavailable() throws Exception {
+
+        Mockito.when(productService.getProductsAsync(Boolean.TRUE, null, null)).thenReturn(CompletableFuture.failedFuture(
+                BulkheadFullException.createBulkheadFullException(Bulkhead.ofDefaults("supply_chain_read"))));
+
+        assertDownstreamListStatus(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void open_circuit_breaker_answers_service_unavailable() throws Exception {
+
+        Mockito.when(productService.getProductsAsync(Boolean.TRUE, null, null)).thenReturn(CompletableFuture.failedFuture(
+                CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("product_downstream"))));
+
+        assertDownstreamListStatus(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void supplier_timeout_answers_gateway_timeout() throws Exception {
+
+        Mockito.when(productService.getProductsAsync(Boolean.TRUE, null, null))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("supply_chain_get_products")));
+
+        assertDownstreamListStatus(HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    @Test
+    public void malformed_cursor_answers_bad_request() throws Exception {
+
+        Mockito.when(productService.getProductsAsync(Boolean.FALSE, null, "not-a-cursor"))
+                .thenThrow(new InvalidRequestException("Invalid cursor not-a-cursor"));
+
+        MockMvcBuilders.standaloneSetup(productController)
+                .setControllerAdvice(new ExceptionHandlerAdvice())
+                .build()
+                .perform(MockMvcRequestBuilders.get("/supply-chain").param("after", "not-a-cursor"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    /**
+     * Runs the request through the MVC stack, async dispatch and exception handlers included.
+     */
+    private void assertDownstreamListStatus(HttpStatus status) throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(productController)
+                .setControllerAdvice(new ExceptionHandlerAdvice())
+                .build();
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/supply-chain").param("downstream", "true"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().is(status.value()));
+    }
 }
@@ -0,0 +1,153 @@
+package com.waes.phillips.products.data.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.OutboxEvent;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import com.waes.phillips.products.services.ProductOutboxDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class OutboxEventRepositoryTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+    private static final int BATCH_SIZE = 3;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SupplyChainProductIdRepository supplyChainProductIdRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private OutboxEvent event(OutboxEvent.Operation operation, String productId, Instant nextAttemptAt) {
+        return outboxEventRepository.save(OutboxEvent.builder()
+                .productId(productId)
+                .operation(operation)
+                .payload("{\"id\":\"" + productId + "\",\"name\":\"Product " + productId + "\"}")
+                .status(OutboxEvent.Status.PENDING)
+                .createdAt(NOW)
+                .nextAttemptAt(nextAttemptAt)
+                .build());
+    }
+
+    /**
+     * More products in backoff than fit in a batch, each with a due event behind the one waiting, then a product
+     * whose events are all due.
+     */
+    private void backedOffProductsFirst() {
+        for (int i = 0; i < BATCH_SIZE + 2; i++) {
+            event(OutboxEvent.Operation.SAVE, "waiting-" + i, NOW.plusSeconds(60));
+            event(OutboxEvent.Operation.UPDATE, "waiting-" + i, NOW);
+        }
+        event(OutboxEvent.Operation.SAVE, "due", NOW);
+        event(OutboxEvent.Operation.UPDATE, "due", NOW);
+        outboxEventRepository.flush();
+    }
+
+    @Test
+    public void due_events_skip_products_in_backoff() {
+        backedOffProductsFirst();
+
+        List<OutboxEvent> due = outboxEventRepository.findDue(OutboxEvent.Status.PENDING, NOW, PageRequest.of(0, BATCH_SIZE));
+
+        Assert.assertEquals(2, due.size());
+        Assert.assertTrue(due.stream().allMatch(event -> "due".equals(event.getProductId())));
+        Assert.assertEquals(OutboxEvent.Operation.SAVE, due.get(0).getOperation());
+        Assert.assertEquals(OutboxEvent.Operation.UPDATE, due.get(1).getOperation());
+    }
+
+    @Test
+    public void events_due_once_backoff_is_over() {
+        backedOffProductsFirst();
+
+        List<OutboxEvent> due = outboxEventRepository.findDue(OutboxEvent.Status.PENDING, NOW.plusSeconds(60), PageRequest.of(0, 100));
+
+        Assert.assertEquals(2 * (BATCH_SIZE + 2) + 2, due.size());
+        List<Long> ids = due.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+        Assert.assertEquals(ids.stream().sorted().collect(Collectors.toList()), ids);
+    }
+
+    private static List<Long> ids(List<OutboxEvent> events) {
+        return events.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void claimed_events_and_later_ones_not_due_until_lease_is_over() {
+        OutboxEvent first = event(OutboxEvent.Operation.SAVE, "claimed", NOW);
+        OutboxEvent second = event(OutboxEvent.Operation.UPDATE, "claimed", NOW);
+        OutboxEvent other = event(OutboxEvent.Operation.SAVE, "other", NOW);
+        outboxEventRepository.flush();
+
+        Assert.assertEquals(1, outboxEventRepository.claim(Collections.singletonList(first.getId()), OutboxEvent.Status.PENDING,
+                "first", NOW, NOW.plusSeconds(60)));
+
+        Assert.assertEquals(Collections.singletonList(other.getId()),
+                ids(outboxEventRepository.findDue(OutboxEvent.Status.PENDING, NOW, PageRequest.of(0, BATCH_SIZE))));
+        Assert.assertEquals(Arrays.asList(first.getId(), second.getId(), other.getId()),
+                ids(outboxEventRepository.findDue(OutboxEvent.Status.PENDING, NOW.plusSeconds(60), PageRequest.of(0, BATCH_SIZE))));
+    }
+
+    @Test
+    public void events_claimed_by_one_dispatcher_only() {
+        OutboxEvent first = event(OutboxEvent.Operation.SAVE, "claimed", NOW);
+        OutboxEvent second = event(OutboxEvent.Operation.UPDATE, "claimed", NOW);
+        OutboxEvent other = event(OutboxEvent.Operation.SAVE, "other", NOW);
+        outboxEventRepository.flush();
+        List<Long> due = ids(outboxEventRepository.findDue(OutboxEvent.Status.PENDING, NOW, PageRequest.of(0, BATCH_SIZE)));
+
+        Assert.assertEquals(1, outboxEventRepository.claim(Collections.singletonList(first.getId()), OutboxEvent.Status.PENDING,
+                "first", NOW, NOW.plusSeconds(60)));
+        Assert.assertEquals(1, outboxEventRepository.claim(due, OutboxEvent.Status.PENDING, "second", NOW, NOW.plusSeconds(60)));
+
+        Assert.assertEquals(Collections.singletonList(first.getId()), ids(outboxEventRepository.findByClaimedByOrderById("first")));
+        Assert.assertEquals(Collections.singletonList(other.getId()), ids(outboxEventRepository.findByClaimedByOrderById("second")));
+        Assert.assertNull(outboxEventRepository.findById(second.getId()).orElseThrow().getClaimedBy());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void products_in_backoff_do_not_stall_dispatcher() {
+        backedOffProductsFirst();
+        AsyncSupplyChainIntegration supplyChainIntegration = Mockito.mock(AsyncSupplyChainIntegration.class);
+        Mockito.when(supplyChainIntegration.writeProducts(ArgumentMatchers.any())).thenAnswer(invocation -> invocation.<List<SupplyChainBulkItemDTO>>getArgument(0)
+                .stream().map(item -> CompletableFuture.completedFuture(item.getProduct())).collect(Collectors.toList()));
+        ProductOutboxDispatcher dispatcher = new ProductOutboxDispatcher(outboxEventRepository, supplyChainProductIdRepository,
+                supplyChainIntegration, new TransactionTemplate(transactionManager), new ObjectMapper(), new SimpleMeterRegistry(),
+                BATCH_SIZE, 3, Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofMillis(500), Duration.ofSeconds(60),
+                Clock.fixed(NOW, ZoneOffset.UTC));
+
+        Assert.assertEquals(2, dispatcher.dispatch());
+
+        Mockito.verify(supplyChainIntegration).writeProducts(ArgumentMatchers.argThat(items -> items.size() == 1
+                && SupplyChainBulkItemDTO.Operation.SAVE.equals(items.get(0).getOperation()) && "due".equals(items.get(0).getProduct().getId())));
+        Mockito.verify(supplyChainIntegration).writeProducts(ArgumentMatchers.argThat(items -> items.size() == 1
+                && SupplyChainBulkItemDTO.Operation.UPDATE.equals(items.get(0).getOperation()) && "due".equals(items.get(0).getId())));
+        Mockito.verifyNoMoreInteractions(supplyChainIntegration);
+        Assert.assertEquals(2 * (BATCH_SIZE + 2), outboxEventRepository.countByStatus(OutboxEvent.Status.PENDING));
+    }
+}
@@ -0,0 +1,130 @@
+package com.waes.phillips.products.data.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.exception.ExceptionHandlerAdvice;
+import com.waes.phillips.products.exception.ProductConflictException;
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.services.InventorySnapshot;
+import com.waes.phillips.products.services.ProductNameIndex;
+import com.waes.phillips.products.services.ProductOutbox;
+import com.waes.phillips.products.services.ProductService;
+import com.waes.phillips.products.services.ProductServiceImpl;
+import com.waes.phillips.products.utils.UuidV7;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(ProductServiceImpl.class)
+public class ProductRepositoryTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @MockBean
+    private SupplyChainIntegration supplyChainIntegration;
+
+    @MockBean
+    private AsyncSupplyChainIntegration asyncSupplyChainIntegration;
+
+    @MockBean
+    private ObjectMapper mapper;
+
+    @MockBean
+    private ProductOutbox productOutbox;
+
+    @MockBean
+    private ProductNameIndex productNameIndex;
+
+    @MockBean
+    private InventorySnapshot inventorySnapshot;
+
+    private String saved() {
+        String id = UuidV7.next().toString();
+        productRepository.save(Product.builder().id(id).name("Lamp").price(BigDecimal.TEN).quantity(1).build());
+        return id;
+    }
+
+    private long version(String id) {
+        return productRepository.findDTOById(id).orElseThrow(AssertionError::new).getVersion();
+    }
+
+    private ProductDTO update(String name, Long version) {
+        return ProductDTO.builder().name(name).price(BigDecimal.ONE).quantity(2).version(version).build();
+    }
+
+    @Test
+    public void update_by_id_bumps_version() {
+        String id = saved();
+        Assert.assertEquals(0, version(id));
+
+        Assert.assertEquals(1, productRepository.updateById(id, "Desk lamp", BigDecimal.ONE, 2));
+
+        ProductDTO product = productRepository.findDTOById(id).orElseThrow(AssertionError::new);
+        Assert.assertEquals("Desk lamp", product.getName());
+        Assert.assertEquals(Long.valueOf(1), product.getVersion());
+        Assert.assertEquals(0, productRepository.updateById(UuidV7.next().toString(), "Desk lamp", BigDecimal.ONE, 2));
+    }
+
+    @Test
+    public void update_by_id_and_version_only_applies_to_current_version() {
+        String id = saved();
+
+        Assert.assertEquals(1, productRepository.updateByIdAndVersion(id, 0L, "Desk lamp", BigDecimal.ONE, 2));
+        Assert.assertEquals(1, version(id));
+        Assert.assertEquals(0, productRepository.updateByIdAndVersion(id, 0L, "Floor lamp", BigDecimal.ONE, 2));
+        Assert.assertEquals(1, version(id));
+        Assert.assertEquals("Desk lamp", productRepository.findDTOById(id).orElseThrow(AssertionError::new).getName());
+    }
+
+    @Test
+    public void update_with_current_version_answers_next_version() {
+        String id = saved();
+
+        ProductDTO product = productService.updateProduct(update("Desk lamp", 0L), id, false).orElseThrow(AssertionError::new);
+
+        Assert.assertEquals(Long.valueOf(1), product.getVersion());
+        Assert.assertEquals(1, version(id));
+    }
+
+    @Test
+    public void stale_version_is_conflict() {
+        String id = saved();
+        productService.updateProduct(update("Desk lamp", 0L), id, false);
+
+        ProductConflictException exception = Assertions.assertThrows(ProductConflictException.class,
+                () -> productService.updateProduct(update("Floor lamp", 0L), id, false));
+
+        Assert.assertEquals(HttpStatus.CONFLICT, new ExceptionHandlerAdvice().conflictErrorHandler(exception).getStatusCode());
+        Assert.assertEquals(1, version(id));
+    }
+
+    @Test
+    public void unknown_product_is_not_found_with_or_without_version() {
+        String id = UuidV7.next().toString();
+
+        ProductException exception = Assertions.assertThrows(ProductException.class,
+                () -> productService.updateProduct(update("Desk lamp", 0L), id, false));
+        Assertions.assertThrows(ProductException.class, () -> productService.updateProduct(update("Desk lamp", null), id, false));
+
+        Assert.assertEquals(HttpStatus.NOT_FOUND, new ExceptionHandlerAdvice().serviceErrorHandler(exception).getStatusCode());
+        Assert.assertFalse(productRepository.existsById(id));
+    }
+}
@@ -0,0 +1,131 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.integration.impl.AsyncSupplyChainIntegrationImpl;
+import com.waes.phillips.products.integration.impl.SupplyChainBulkheads;
+import com.waes.phillips.products.integration.impl.SupplyChainSingleFlight;
+import com.waes.phillips.products.integration.impl.SupplyChainSnapshotCache;
+import com.waes.phillips.products.integration.impl.SupplyChainMirror;
+import com.waes.phillips.products.integration.impl.SupplyChainWriteBatcher;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import com.waes.phillips.products.utils.Deadline;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+
+public class AsyncSupplyChainIntegrationImplTest {
+
+    @Mock
+    private HttpUtils httpUtils;
+
+    private AsyncSupplyChainIntegration supplyChainIntegration;
+
+    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private ProductDTO productDto = ProductDTO.builder()
+            .id("123")
+            .name("ProductDto")
+            .quantity(1)
+            .price(BigDecimal.TEN)
+            .build();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        supplyChainIntegration = new AsyncSupplyChainIntegrationImpl("http://localhost", "/resource", httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), new SupplyChainSnapshotCache(Duration.ofSeconds(30),
+                Duration.ofSeconds(300), 100, Runnable::run, Clock.systemUTC()),
+                new SupplyChainSingleFlight(new SimpleMeterRegistry()),
+                TimeLimiterRegistry.of(TimeLimiterConfig.custom().timeoutDuration(Duration.ofMillis(200)).build()), scheduler,
+                new SupplyChainBulkheads(BulkheadRegistry.ofDefaults(), ThreadPoolBulkheadRegistry.ofDefaults(), "semaphore"),
+                SupplyChainWriteBatcher.disabled(), SupplyChainMirror.disabled());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void success_get_products() {
+        ProductsDTO productsDTO = ProductsDTO.builder().bundle(Arrays.asList(productDto)).build();
+        Mockito.when(httpUtils.executeGetRequestAsync(ArgumentMatchers.eq("http://localhost/resource"), ArgumentMatchers.eq(ProductsDTO.class),
+                ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(productsDTO));
+
+        Assert.assertSame(productsDTO, supplyChainIntegration.getProducts().join());
+    }
+
+    @Test
+    public void success_update_product() {
+        Mockito.when(httpUtils.executePostRequestAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(productDto));
+
+        Optional<ProductDTO> updated = supplyChainIntegration.updateProduct(productDto, "123").join();
+
+        Assert.assertTrue(updated.isPresent());
+        Mockito.verify(httpUtils).executePostRequestAsync(ArgumentMatchers.eq("http://localhost/resource/123"),
+                ArgumentMatchers.eq(productDto), ArgumentMatchers.eq(ProductDTO.class), ArgumentMatchers.any(Deadline.class));
+        Mockito.verify(httpUtils, Mockito.times(0)).executeGetRequestAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void no_found_delete_product() {
+        Mockito.when(httpUtils.executeDeleteRequestAsync(ArgumentMatchers.eq("http://localhost/resource/123"),
+                ArgumentMatchers.eq(ProductDTO.class), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(CompletableFuture.failedFuture(new SupplyChainErrorException("Not found", HttpStatus.NOT_FOUND)));
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> supplyChainIntegration.deleteProduct("123").join());
+
+        Assert.assertTrue(exception.getCause() instanceof ProductException);
+        Mockito.verify(httpUtils, Mockito.times(0)).executeGetRequestAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void success_save_product() {
+        Mockito.when(httpUtils.executePostRequestAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(CompletableFuture.completedFuture(productDto));
+
+        Assert.assertSame(productDto, supplyChainIntegration.saveProduct(productDto).join());
+    }
+
+    @Test
+    public void timeout_get_product() {
+        Mockito.when(httpUtils.executeGetRequestAsync(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(new CompletableFuture<>());
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> supplyChainIntegration.getProduct("123").join());
+
+        Assert.assertTrue(exception.getCause() instanceof TimeoutException);
+    }
+}
@@ -0,0 +1,102 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.model.InventoryStatsDTO;
+import com.waes.phillips.products.model.PriceBucketDTO;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class InventorySnapshotTest {
+
+    private static final List<BigDecimal> BUCKETS = Arrays.asList(new BigDecimal("10"), new BigDecimal("50"));
+
+    private ProductRepository productRepository;
+    private InventorySnapshot inventorySnapshot;
+
+    @Before
+    public void setUp() {
+        productRepository = Mockito.mock(ProductRepository.class);
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        inventorySnapshot = new InventorySnapshot(productRepository, transactionTemplate);
+    }
+
+    private static List<Long> counts(InventoryStatsDTO stats) {
+        return stats.getPriceHistogram().stream().map(PriceBucketDTO::getCount).collect(Collectors.toList());
+    }
+
+    @Test
+    public void aggregates_loaded_products() {
+        Mockito.when(productRepository.streamAllStock()).thenReturn(Stream.of(
+                new Object[]{"1", new BigDecimal("9.99"), 2},
+                new Object[]{"2", new BigDecimal("10"), 20},
+                new Object[]{"3", new BigDecimal("75.50"), null},
+                new Object[]{"4", null, 5}));
+
+        inventorySnapshot.load();
+        InventoryStatsDTO stats = inventorySnapshot.stats(10, BUCKETS);
+
+        Assert.assertEquals(4, stats.getProducts());
+        Assert.assertEquals(27, stats.getUnits());
+        Assert.assertEquals(new BigDecimal("219.98"), stats.getStockValue());
+        Assert.assertEquals(2, stats.getLowStock());
+        Assert.assertEquals(Arrays.asList(1L, 1L, 1L), counts(stats));
+        Assert.assertEquals(new BigDecimal("0.00"), stats.getPriceHistogram().get(0).getFrom());
+        Assert.assertEquals(new BigDecimal("10.00"), stats.getPriceHistogram().get(0).getTo());
+        Assert.assertNull(stats.getPriceHistogram().get(2).getTo());
+    }
+
+    @Test
+    public void updates_and_deletes_keep_columns_dense() {
+        inventorySnapshot.put("1", BigDecimal.ONE, 1);
+        inventorySnapshot.put("2", BigDecimal.ONE, 2);
+        inventorySnapshot.put("3", BigDecimal.ONE, 3);
+        inventorySnapshot.put("2", new BigDecimal("20"), 4);
+        inventorySnapshot.remove("1");
+        inventorySnapshot.remove("unknown");
+        inventorySnapshot.put("4", BigDecimal.ONE, 5);
+
+        InventoryStatsDTO stats = inventorySnapshot.stats(0, BUCKETS);
+
+        Assert.assertEquals(3, inventorySnapshot.size());
+        Assert.assertEquals(12, stats.getUnits());
+        Assert.assertEquals(new BigDecimal("88.00"), stats.getStockValue());
+        Assert.assertEquals(Arrays.asList(2L, 1L, 0L), counts(stats));
+    }
+
+    @Test
+    public void parallel_chunks_add_up() {
+        int products = 300_000;
+        for (int i = 0; i < products; i++) {
+            inventorySnapshot.put(String.valueOf(i), BigDecimal.valueOf(i % 100), i % 20);
+        }
+
+        InventoryStatsDTO stats = inventorySnapshot.stats(5, Collections.singletonList(BigDecimal.valueOf(50)));
+
+        Assert.assertEquals(products, stats.getProducts());
+        Assert.assertEquals(products / 20 * 190, stats.getUnits());
+        Assert.assertEquals(products / 4, stats.getLowStock());
+        Assert.assertEquals(Arrays.asList(products / 2L, products / 2L), counts(stats));
+        long value = 0;
+        for (int i = 0; i < products; i++) {
+            value += (long) (i % 100) * (i % 20);
+        }
+        Assert.assertEquals(BigDecimal.valueOf(value * 100, 2), stats.getStockValue());
+    }
+}
@@ -0,0 +1,75 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.model.ProductDTO;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ProductNameIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductNameIndex productNameIndex;
+
+    @Before
+    public void setUp() {
+        productRepository = Mockito.mock(ProductRepository.class);
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        productNameIndex = new ProductNameIndex(productRepository, transactionTemplate);
+    }
+
+    private List<String> suggestedIds(String prefix, int limit) {
+        return productNameIndex.suggest(prefix, limit).stream().map(ProductDTO::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void loaded_from_database() {
+        Mockito.when(productRepository.streamAllNames()).thenReturn(Stream.of(
+                new Object[]{"1", "Lamp"}, new Object[]{"2", "Laptop"}, new Object[]{"3", "Desk"}, new Object[]{"4", null}));
+
+        productNameIndex.load();
+
+        Assert.assertEquals(3, productNameIndex.size());
+        Assert.assertEquals(Arrays.asList("1", "2"), suggestedIds("la", 10));
+    }
+
+    @Test
+    public void prefix_ignores_case_and_respects_limit() {
+        productNameIndex.put("1", "lamp");
+        productNameIndex.put("2", "LAMP");
+        productNameIndex.put("3", "Lampshade");
+        productNameIndex.put("4", "Lab coat");
+
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), suggestedIds("LAM", 10));
+        Assert.assertEquals(Arrays.asList("4", "1"), suggestedIds("la", 2));
+        Assert.assertEquals("Lampshade", productNameIndex.suggest("lamps", 10).get(0).getName());
+        Assert.assertTrue(productNameIndex.suggest("lamb", 10).isEmpty());
+    }
+
+    @Test
+    public void renames_and_deletes_replace_entries() {
+        productNameIndex.put("1", "Lamp");
+        productNameIndex.put("1", "Desk");
+        productNameIndex.put("2", "Lamp");
+        productNameIndex.remove("2");
+        productNameIndex.remove("unknown");
+
+        Assert.assertTrue(productNameIndex.suggest("lamp", 10).isEmpty());
+        Assert.assertEquals(Arrays.asList("1"), suggestedIds("d", 10));
+        Assert.assertEquals(1, productNameIndex.size());
+    }
+}
@@ -0,0 +1,285 @@
+package com.waes.phillips.products.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.OutboxEvent;
+import com.waes.phillips.products.data.SupplyChainProductId;
+import com.waes.phillips.products.data.repository.OutboxEventRepository;
+import com.waes.phillips.products.data.repository.SupplyChainProductIdRepository;
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class ProductOutboxDispatcherTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private OutboxEventRepository outboxEventRepository;
+    private SupplyChainProductIdRepository supplyChainProductIdRepository;
+    private AsyncSupplyChainIntegration supplyChainIntegration;
+    private SimpleMeterRegistry meterRegistry;
+    private ProductOutboxDispatcher dispatcher;
+    private long nextId;
+    private final List<List<SupplyChainBulkItemDTO>> bulkRequests = new ArrayList<>();
+    private Function<SupplyChainBulkItemDTO, CompletableFuture<ProductDTO>> bulkAnswer = item -> CompletableFuture.completedFuture(item.getProduct());
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        outboxEventRepository = Mockito.mock(OutboxEventRepository.class);
+        supplyChainProductIdRepository = Mockito.mock(SupplyChainProductIdRepository.class);
+        supplyChainIntegration = Mockito.mock(AsyncSupplyChainIntegration.class);
+        Mockito.when(supplyChainIntegration.writeProducts(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            List<SupplyChainBulkItemDTO> items = invocation.getArgument(0);
+            bulkRequests.add(new ArrayList<>(items));
+            return items.stream().map(item -> bulkAnswer.apply(item)).collect(Collectors.toList());
+        });
+        Mockito.when(supplyChainIntegration.deleteProduct(ArgumentMatchers.any())).thenReturn(CompletableFuture.completedFuture(null));
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.when(transactionTemplate.execute(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        meterRegistry = new SimpleMeterRegistry();
+        dispatcher = new ProductOutboxDispatcher(outboxEventRepository, supplyChainProductIdRepository, supplyChainIntegration, transactionTemplate,
+                new ObjectMapper(), meterRegistry, 100, 3, Duration.ofSeconds(1), Duration.ofSeconds(10),
+                Duration.ofMillis(500), Duration.ofSeconds(60), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private OutboxEvent event(OutboxEvent.Operation operation, String productId) {
+        return OutboxEvent.builder()
+                .id(++nextId)
+                .productId(productId)
+                .operation(operation)
+                .payload("{\"id\":\"" + productId + "\",\"name\":\"Product " + productId + "\"}")
+                .status(OutboxEvent.Status.PENDING)
+                .createdAt(NOW)
+                .nextAttemptAt(NOW)
+                .build();
+    }
+
+    /**
+     * The events are due and claimed by the dispatcher.
+     */
+    private void pending(OutboxEvent... events) {
+        Mockito.when(outboxEventRepository.findDue(ArgumentMatchers.eq(OutboxEvent.Status.PENDING), ArgumentMatchers.eq(NOW), ArgumentMatchers.any()))
+                .thenReturn(Arrays.asList(events));
+        Mockito.when(outboxEventRepository.claim(ArgumentMatchers.any(), ArgumentMatchers.eq(OutboxEvent.Status.PENDING), ArgumentMatchers.anyString(),
+                ArgumentMatchers.eq(NOW), ArgumentMatchers.eq(NOW.plusSeconds(60)))).thenReturn(events.length);
+        Mockito.when(outboxEventRepository.findByClaimedByOrderById(ArgumentMatchers.anyString())).thenReturn(Arrays.asList(events));
+    }
+
+    private void bulkFails(String productId, RuntimeException error) {
+        bulkAnswer = item -> productId.equals(item.getProduct().getId()) ? CompletableFuture.failedFuture(error)
+                : CompletableFuture.completedFuture(item.getProduct());
+    }
+
+    private static List<String> productIds(List<SupplyChainBulkItemDTO> items) {
+        return items.stream().map(item -> item.getProduct().getId()).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OutboxEvent> deleted() {
+        ArgumentCaptor<Iterable<OutboxEvent>> captor = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(outboxEventRepository).deleteInBatch(captor.capture());
+        return (List<OutboxEvent>) captor.getValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OutboxEvent> saved() {
+        ArgumentCaptor<Iterable<OutboxEvent>> captor = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(outboxEventRepository).saveAll(captor.capture());
+        return (List<OutboxEvent>) captor.getValue();
+    }
+
+    @Test
+    public void success_events_sent_in_rounds_and_deleted() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        OutboxEvent update = event(OutboxEvent.Operation.UPDATE, "1");
+        OutboxEvent delete = event(OutboxEvent.Operation.DELETE, "1");
+        OutboxEvent other = event(OutboxEvent.Operation.SAVE, "2");
+        pending(save, update, other, delete);
+
+        Assert.assertEquals(4, dispatcher.dispatch());
+
+        Assert.assertEquals(2, bulkRequests.size());
+        Assert.assertEquals(Arrays.asList("1", "2"), productIds(bulkRequests.get(0)));
+        Assert.assertEquals(SupplyChainBulkItemDTO.Operation.UPDATE, bulkRequests.get(1).get(0).getOperation());
+        Assert.assertEquals("1", bulkRequests.get(1).get(0).getId());
+        Mockito.verify(supplyChainIntegration).deleteProduct("1");
+        Assert.assertEquals(4, deleted().size());
+        Assert.assertTrue(saved().isEmpty());
+        Assert.assertEquals(4, meterRegistry.counter(ProductOutboxDispatcher.DISPATCHED_METRIC).count(), 0);
+    }
+
+    @Test
+    public void failure_holds_later_events_of_product() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        OutboxEvent update = event(OutboxEvent.Operation.UPDATE, "1");
+        OutboxEvent other = event(OutboxEvent.Operation.SAVE, "2");
+        pending(save, update, other);
+        bulkFails("1", new SupplyChainErrorException("Failed to access resource"));
+
+        Assert.assertEquals(1, dispatcher.dispatch());
+
+        Assert.assertEquals(1, bulkRequests.size());
+        Assert.assertEquals(Collections.singletonList(other), deleted());
+        Assert.assertEquals(Arrays.asList(save, update), saved());
+        Assert.assertEquals(OutboxEvent.Status.PENDING, save.getStatus());
+        Assert.assertEquals(1, save.getAttempts());
+        Assert.assertEquals(NOW.plusSeconds(1), save.getNextAttemptAt());
+        Assert.assertTrue(saved().stream().allMatch(event -> event.getClaimedBy() == null && event.getClaimedUntil() == null));
+    }
+
+    @Test
+    public void events_waiting_for_next_attempt_not_sent() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        save.setAttempts(1);
+        save.setNextAttemptAt(NOW.plusSeconds(1));
+        pending(save, event(OutboxEvent.Operation.UPDATE, "1"));
+
+        Assert.assertEquals(0, dispatcher.dispatch());
+
+        Mockito.verify(supplyChainIntegration, Mockito.never()).writeProducts(ArgumentMatchers.any());
+        Assert.assertEquals(2, saved().size());
+    }
+
+    @Test
+    public void events_claimed_by_another_dispatcher_not_sent() {
+        pending(event(OutboxEvent.Operation.SAVE, "1"));
+        Mockito.when(outboxEventRepository.claim(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.anyString(),
+                ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(0);
+
+        Assert.assertEquals(0, dispatcher.dispatch());
+
+        Mockito.verify(supplyChainIntegration, Mockito.never()).writeProducts(ArgumentMatchers.any());
+        Mockito.verify(outboxEventRepository, Mockito.never()).deleteInBatch(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void event_given_up_after_max_attempts() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        save.setAttempts(2);
+        OutboxEvent update = event(OutboxEvent.Operation.UPDATE, "1");
+        pending(save, update);
+        bulkAnswer = item -> SupplyChainBulkItemDTO.Operation.SAVE.equals(item.getOperation())
+                ? CompletableFuture.failedFuture(new SupplyChainErrorException("Failed to access resource"))
+                : CompletableFuture.completedFuture(item.getProduct());
+
+        Assert.assertEquals(1, dispatcher.dispatch());
+
+        Assert.assertEquals(OutboxEvent.Status.FAILED, save.getStatus());
+        Assert.assertEquals(Collections.singletonList(update), deleted());
+        Assert.assertEquals(1, meterRegistry.counter(ProductOutboxDispatcher.FAILED_METRIC).count(), 0);
+    }
+
+    @Test
+    public void product_unknown_to_supplier_not_retried() {
+        OutboxEvent update = event(OutboxEvent.Operation.UPDATE, "1");
+        OutboxEvent delete = event(OutboxEvent.Operation.DELETE, "2");
+        pending(update, delete);
+        bulkFails("1", new ProductException("We could not find a Product with  Id 1"));
+        Mockito.when(supplyChainIntegration.deleteProduct("2"))
+                .thenReturn(CompletableFuture.failedFuture(new ProductException("We could not find a Product with  Id 2")));
+
+        Assert.assertEquals(1, dispatcher.dispatch());
+
+        Assert.assertEquals(OutboxEvent.Status.FAILED, update.getStatus());
+        Assert.assertEquals(Collections.singletonList(delete), deleted());
+    }
+
+    @Test
+    public void write_rejected_by_bulk_endpoint_not_retried() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        pending(save);
+        bulkFails("1", new SupplyChainErrorException("Invalid product", HttpStatus.BAD_REQUEST));
+
+        Assert.assertEquals(0, dispatcher.dispatch());
+
+        Assert.assertEquals(OutboxEvent.Status.FAILED, save.getStatus());
+        Assert.assertEquals(1, save.getAttempts());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SupplyChainProductId> savedIds() {
+        ArgumentCaptor<Iterable<SupplyChainProductId>> captor = ArgumentCaptor.forClass(Iterable.class);
+        Mockito.verify(supplyChainProductIdRepository).saveAll(captor.capture());
+        return (List<SupplyChainProductId>) captor.getValue();
+    }
+
+    @Test
+    public void later_events_sent_to_id_given_by_supplier() {
+        OutboxEvent save = event(OutboxEvent.Operation.SAVE, "1");
+        OutboxEvent update = event(OutboxEvent.Operation.UPDATE, "1");
+        pending(save, update);
+        bulkAnswer = item -> CompletableFuture.completedFuture(SupplyChainBulkItemDTO.Operation.SAVE.equals(item.getOperation())
+                ? ProductDTO.builder().id("supplier-1").name("Product 1").build() : item.getProduct());
+
+        Assert.assertEquals(2, dispatcher.dispatch());
+
+        Assert.assertEquals("supplier-1", bulkRequests.get(1).get(0).getId());
+        List<SupplyChainProductId> ids = savedIds();
+        Assert.assertEquals(1, ids.size());
+        Assert.assertEquals("1", ids.get(0).getProductId());
+        Assert.assertEquals("supplier-1", ids.get(0).getSupplierId());
+    }
+
+    @Test
+    public void recorded_supplier_id_used_and_removed_by_delete() {
+        SupplyChainProductId known = SupplyChainProductId.builder().productId("1").supplierId("supplier-1").build();
+        Mockito.when(supplyChainProductIdRepository.findAllById(ArgumentMatchers.any())).thenReturn(Collections.singletonList(known));
+        pending(event(OutboxEvent.Operation.UPDATE, "1"), event(OutboxEvent.Operation.DELETE, "1"));
+
+        Assert.assertEquals(2, dispatcher.dispatch());
+
+        Assert.assertEquals("supplier-1", bulkRequests.get(0).get(0).getId());
+        Mockito.verify(supplyChainIntegration).deleteProduct("supplier-1");
+        Mockito.verify(supplyChainProductIdRepository).deleteInBatch(Collections.singletonList(known));
+        Assert.assertTrue(savedIds().isEmpty());
+    }
+
+    @Test
+    public void product_keeping_local_id_not_recorded() {
+        pending(event(OutboxEvent.Operation.SAVE, "1"));
+
+        Assert.assertEquals(1, dispatcher.dispatch());
+
+        Assert.assertTrue(savedIds().isEmpty());
+    }
+
+    @Test
+    public void nothing_pending() {
+        pending();
+
+        Assert.assertEquals(0, dispatcher.dispatch());
+
+        Mockito.verify(outboxEventRepository, Mockito.never()).deleteInBatch(ArgumentMatchers.any());
+    }
+}
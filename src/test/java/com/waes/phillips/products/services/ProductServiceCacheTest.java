@@ -0,0 +1,142 @@
+package com.waes.phillips.products.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.Product;
+import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.model.ProductDTO;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Caching of single product reads through the Spring proxy of {@link ProductServiceImpl}.
+ */
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = ProductServiceCacheTest.CachingConfiguration.class)
+public class ProductServiceCacheTest {
+
+    @Configuration
+    @EnableCaching
+    @Import(ProductServiceImpl.class)
+    static class CachingConfiguration {
+
+        @Bean
+        public CacheManager cacheManager() {
+            return new ConcurrentMapCacheManager(ProductServiceImpl.PRODUCTS_CACHE);
+        }
+    }
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockBean
+    private ProductRepository productRepository;
+
+    @MockBean
+    private SupplyChainIntegration supplyChainIntegration;
+
+    @MockBean
+    private AsyncSupplyChainIntegration asyncSupplyChainIntegration;
+
+    @MockBean
+    private ObjectMapper mapper;
+
+    @MockBean
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private ProductOutbox productOutbox;
+
+    @MockBean
+    private ProductNameIndex productNameIndex;
+
+    @MockBean
+    private InventorySnapshot inventorySnapshot;
+
+    @Before
+    public void setUp() {
+        cacheManager.getCache(ProductServiceImpl.PRODUCTS_CACHE).clear();
+        Mockito.when(transactionTemplate.execute(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        Mockito.when(productRepository.findDTOById("123"))
+                .thenReturn(Optional.of(ProductDTO.builder().id("123").name("Lamp").version(0L).build()));
+    }
+
+    @Test
+    public void second_read_served_from_cache() {
+        Assert.assertEquals("Lamp", productService.getProduct("123").orElseThrow(AssertionError::new).getName());
+        Assert.assertEquals("Lamp", productService.getProduct("123").orElseThrow(AssertionError::new).getName());
+
+        Mockito.verify(productRepository, Mockito.times(1)).findDTOById("123");
+    }
+
+    @Test
+    public void update_evicts_product() {
+        Mockito.when(productRepository.updateById(ArgumentMatchers.eq("123"), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenReturn(1);
+        productService.getProduct("123");
+
+        productService.updateProduct(ProductDTO.builder().name("Desk lamp").build(), "123", Boolean.FALSE);
+        productService.getProduct("123");
+        productService.updateProductAsync(ProductDTO.builder().name("Desk lamp").build(), "123", Boolean.FALSE).join();
+        productService.getProduct("123");
+
+        Mockito.verify(productRepository, Mockito.times(3)).findDTOById("123");
+    }
+
+    @Test
+    public void delete_evicts_product() {
+        Mockito.when(productRepository.findById("123")).thenReturn(Optional.of(Product.builder().id("123").build()));
+        productService.getProduct("123");
+
+        productService.deleteProduct("123", Boolean.FALSE);
+        productService.getProduct("123");
+        productService.deleteProductAsync("123", Boolean.FALSE).join();
+        productService.getProduct("123");
+
+        Mockito.verify(productRepository, Mockito.times(3)).findDTOById("123");
+    }
+
+    @Test
+    public void absent_product_not_cached() {
+        Mockito.when(productRepository.findDTOById("456")).thenReturn(Optional.empty());
+
+        Assert.assertFalse(productService.getProduct("456").isPresent());
+        Assert.assertFalse(productService.getProduct("456").isPresent());
+
+        Mockito.verify(productRepository, Mockito.times(2)).findDTOById("456");
+        Assert.assertNull(cacheManager.getCache(ProductServiceImpl.PRODUCTS_CACHE).get("456"));
+    }
+}
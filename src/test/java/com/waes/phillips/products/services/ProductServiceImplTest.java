@@ -1,12 +1,22 @@
 package com.waes.phillips.products.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.data.OutboxEvent;
 import com.waes.phillips.products.data.Product;
 import com.waes.phillips.products.data.repository.ProductRepository;
+import com.waes.phillips.products.exception.InvalidRequestException;
+import com.waes.phillips.products.exception.ProductConflictException;
 import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
 import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.model.BulkProductsResultDTO;
 import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductSearchDTO;
 import com.waes.phillips.products.model.ProductsDTO;
 import com.waes.phillips.products.utils.ProductUtils;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,9 +24,30 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @ExtendWith(MockitoExtension.class)
 public class ProductServiceImplTest {
@@ -27,6 +58,27 @@ public class ProductServiceImplTest {
     @Mock
     private SupplyChainIntegration supplyChainIntegration;
 
+    @Mock
+    private AsyncSupplyChainIntegration asyncSupplyChainIntegration;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private ObjectMapper mapper = new ObjectMapper();
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ProductOutbox productOutbox;
+
+    @Mock
+    private ProductNameIndex productNameIndex;
+
+    @Mock
+    private InventorySnapshot inventorySnapshot;
+
     @InjectMocks
     private ProductServiceImpl productService;
 
@@ -35,6 +87,12 @@ public class ProductServiceImplTest {
 
         productService = new ProductServiceImpl();
         MockitoAnnotations.initMocks(this);
+        Mockito.when(transactionTemplate.execute(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
     }
 
     @Test
@@ -52,6 +110,7 @@ public class ProductServiceImplTest {
         productService.saveProduct(productDto, Boolean.FALSE);
 
         Mockito.verify(productRepository).save(ArgumentMatchers.any());
+        Mockito.verify(productOutbox).record(OutboxEvent.Operation.SAVE, product);
     }
 
     @Test
@@ -69,6 +128,55 @@ public class ProductServiceImplTest {
 
         Mockito.verify(supplyChainIntegration).saveProduct(ArgumentMatchers.any());
         Mockito.verify(productRepository, Mockito.times(0)).save(ArgumentMatchers.any());
+        Mockito.verifyNoInteractions(productOutbox);
+    }
+
+    @Test
+    public void success_save_products_bulk() {
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+
+        List<ProductDTO> productDTOs = Arrays.asList(
+                ProductDTO.builder().name("Product 1").quantity(1).price(BigDecimal.TEN).build(),
+                ProductDTO.builder().quantity(2).build(),
+                ProductDTO.builder().name("Product 3").quantity(3).price(BigDecimal.ONE).build());
+
+        BulkProductsResultDTO result = productService.saveProducts(productDTOs);
+
+        Assert.assertEquals(3, result.getResults().size());
+        Assert.assertNotNull(result.getResults().get(0).getId());
+        Assert.assertNull(result.getResults().get(1).getId());
+        Assert.assertEquals("Product name is required", result.getResults().get(1).getError());
+        Assert.assertEquals(Integer.valueOf(2), result.getResults().get(2).getIndex());
+        Mockito.verify(entityManager, Mockito.times(2)).persist(ArgumentMatchers.any());
+        Mockito.verify(entityManager).flush();
+        Mockito.verify(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        Mockito.verify(productOutbox, Mockito.times(2)).record(ArgumentMatchers.eq(OutboxEvent.Operation.SAVE), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void success_save_products_bulk_isolates_failing_item() {
+        Mockito.doThrow(new RuntimeException("chunk failed"))
+                .doAnswer(invocation -> {
+                    invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                    return null;
+                })
+                .doThrow(new RuntimeException("item failed"))
+                .when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+
+        List<ProductDTO> productDTOs = Arrays.asList(
+                ProductDTO.builder().name("Product 1").build(),
+                ProductDTO.builder().name("Product 2").build());
+
+        BulkProductsResultDTO result = productService.saveProducts(productDTOs);
+
+        Assert.assertNotNull(result.getResults().get(0).getId());
+        Assert.assertNull(result.getResults().get(0).getError());
+        Assert.assertNull(result.getResults().get(1).getId());
+        Assert.assertEquals("Error saving product Product 2", result.getResults().get(1).getError());
+        Mockito.verify(transactionTemplate, Mockito.times(3)).executeWithoutResult(ArgumentMatchers.any());
     }
 
     @Test
@@ -87,6 +195,7 @@ public class ProductServiceImplTest {
         productService.deleteProduct("123", Boolean.FALSE);
 
         Mockito.verify(productRepository).delete(ArgumentMatchers.any());
+        Mockito.verify(productOutbox).record(OutboxEvent.Operation.DELETE, product);
     }
 
     @Test
@@ -115,17 +224,76 @@ public class ProductServiceImplTest {
                 .price(BigDecimal.TEN)
                 .build();
 
-        Product product = ProductUtils.parseProductDTOToEntity(productDto);
-        Product product2 = ProductUtils.parseProductDTOToEntity(productDto2);
-
-        Iterable<Product> products = Arrays.asList(product, product2);
-        Mockito.when(productRepository.findAll()).thenReturn(products);
+        List<ProductDTO> products = Arrays.asList(productDto, productDto2);
+        Mockito.when(productRepository.findPage(ArgumentMatchers.any())).thenReturn(products);
 
-        ProductsDTO productsEntity = productService.getProducts(Boolean.FALSE);
+        ProductsDTO productsEntity = productService.getProducts(Boolean.FALSE, null, null);
 
         Assert.assertTrue(productsEntity.getBundle().size() == 2);
         Assert.assertTrue(productsEntity.getBundle().get(0).getId() == "123");
         Assert.assertTrue(productsEntity.getBundle().get(1).getId() == "456");
+        Assert.assertNull(productsEntity.getNext());
+    }
+
+    @Test
+    public void success_get_products_first_page() {
+
+        ProductDTO product = ProductDTO.builder().id("123").name("New productDto").build();
+        ProductDTO product2 = ProductDTO.builder().id("456").name("New productDto 2").build();
+
+        Mockito.when(productRepository.findPage(PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(product, product2));
+
+        ProductsDTO productsEntity = productService.getProducts(Boolean.FALSE, 1, null);
+
+        Assert.assertTrue(productsEntity.getBundle().size() == 1);
+        Assert.assertEquals("123", productsEntity.getBundle().get(0).getId());
+        Assert.assertEquals(ProductUtils.encodeCursor("123"), productsEntity.getNext());
+    }
+
+    @Test
+    public void success_get_products_next_page() {
+
+        ProductDTO product2 = ProductDTO.builder().id("456").name("New productDto 2").build();
+
+        Mockito.when(productRepository.findPageAfter("123", PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(product2));
+
+        ProductsDTO productsEntity = productService.getProducts(Boolean.FALSE, 1, ProductUtils.encodeCursor("123"));
+
+        Assert.assertTrue(productsEntity.getBundle().size() == 1);
+        Assert.assertEquals("456", productsEntity.getBundle().get(0).getId());
+        Assert.assertNull(productsEntity.getNext());
+        Mockito.verify(productRepository, Mockito.times(0)).findPage(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void malformed_cursor_is_invalid_request() {
+
+        Assertions.assertThrows(InvalidRequestException.class, () -> productService.getProducts(Boolean.FALSE, 1, "not a cursor!"));
+        Assertions.assertThrows(InvalidRequestException.class,
+                () -> productService.searchProducts(ProductSearchDTO.builder().build(), 1, "not a cursor!"));
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void paging_downstream_products_is_invalid_request() {
+
+        Assertions.assertThrows(InvalidRequestException.class, () -> productService.getProducts(Boolean.TRUE, 10, null));
+        Assertions.assertThrows(InvalidRequestException.class,
+                () -> productService.getProductsAsync(Boolean.TRUE, null, ProductUtils.encodeCursor("123")));
+        Mockito.verifyNoInteractions(supplyChainIntegration, asyncSupplyChainIntegration);
+    }
+
+    @Test
+    public void success_get_products_limit_capped() {
+
+        Mockito.when(productRepository.findPage(ArgumentMatchers.any())).thenReturn(Arrays.asList());
+
+        productService.getProducts(Boolean.FALSE, Integer.MAX_VALUE, null);
+
+        Mockito.verify(productRepository)
+                .findPage(PageRequest.of(0, ProductServiceImpl.MAX_PAGE_SIZE + 1));
     }
 
     @Test
@@ -148,19 +316,120 @@ public class ProductServiceImplTest {
         Mockito.when(supplyChainIntegration.getProducts()).thenReturn(ProductsDTO.builder()
                 .bundle(Arrays.asList(productDto,productDto2)).build());
 
-        ProductsDTO productsEntity = productService.getProducts(Boolean.TRUE);
+        ProductsDTO productsEntity = productService.getProducts(Boolean.TRUE, null, null);
 
         Assert.assertTrue(productsEntity.getBundle().size() == 2);
         Assert.assertTrue(productsEntity.getBundle().get(0).getId() == "123");
         Assert.assertTrue(productsEntity.getBundle().get(1).getId() == "456");
     }
 
+    @Test
+    public void success_export_products() throws IOException {
+
+        ProductDTO product = ProductDTO.builder().id("123").name("New productDto").quantity(1).price(BigDecimal.TEN).build();
+        ProductDTO product2 = ProductDTO.builder().id("456").name("New productDto 2").quantity(2).price(BigDecimal.ONE).build();
+        Mockito.when(productRepository.streamAll()).thenReturn(Stream.of(product, product2));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        productService.exportProducts(outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("123", mapper.readTree(lines[0]).get("id").asText());
+        Assert.assertEquals("456", mapper.readTree(lines[1]).get("id").asText());
+        Mockito.verify(entityManager, Mockito.never()).detach(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void success_get_products_async_downstream() {
+
+        ProductsDTO productsDTO = ProductsDTO.builder().bundle(Arrays.asList()).build();
+        Mockito.when(asyncSupplyChainIntegration.getProducts()).thenReturn(CompletableFuture.completedFuture(productsDTO));
+
+        Assert.assertSame(productsDTO, productService.getProductsAsync(Boolean.TRUE, null, null).join());
+        Mockito.verify(supplyChainIntegration, Mockito.times(0)).getProducts();
+    }
+
+    @Test
+    public void failure_get_products_async_downstream() {
+
+        Mockito.when(asyncSupplyChainIntegration.getProducts())
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("downstream failed")));
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> productService.getProductsAsync(Boolean.TRUE, null, null).join());
+        Assert.assertTrue(exception.getCause() instanceof ProductException);
+    }
+
+    @Test
+    public void full_bulkhead_propagates_from_get_products_async_downstream() {
+
+        BulkheadFullException bulkheadFull = BulkheadFullException.createBulkheadFullException(Bulkhead.ofDefaults("supply_chain_read"));
+        Mockito.when(asyncSupplyChainIntegration.getProducts()).thenReturn(CompletableFuture.failedFuture(bulkheadFull));
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> productService.getProductsAsync(Boolean.TRUE, null, null).join());
+        Assert.assertSame(bulkheadFull, exception.getCause());
+    }
+
+    @Test
+    public void timeout_propagates_from_get_products_async_downstream() {
+
+        TimeoutException timeout = new TimeoutException("supply_chain_get_products");
+        Mockito.when(asyncSupplyChainIntegration.getProducts()).thenReturn(CompletableFuture.failedFuture(timeout));
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> productService.getProductsAsync(Boolean.TRUE, null, null).join());
+        Assert.assertSame(timeout, exception.getCause());
+    }
+
+    @Test
+    public void supplier_error_propagates_from_get_products_downstream() {
+
+        SupplyChainErrorException unavailable = new SupplyChainErrorException("unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        Mockito.when(supplyChainIntegration.getProducts()).thenThrow(unavailable);
+
+        Assert.assertSame(unavailable, Assertions.assertThrows(SupplyChainErrorException.class,
+                () -> productService.getProducts(Boolean.TRUE, null, null)));
+    }
+
+    @Test
+    public void supplier_not_found_is_product_exception_from_get_products_downstream() {
+
+        Mockito.when(supplyChainIntegration.getProducts())
+                .thenThrow(new SupplyChainErrorException("not found", HttpStatus.NOT_FOUND));
+
+        Assertions.assertThrows(ProductException.class, () -> productService.getProducts(Boolean.TRUE, null, null));
+    }
+
+    @Test
+    public void success_save_product_async_local() {
+        ProductDTO productDto = ProductDTO.builder().name("New productDto").build();
+
+        Mockito.when(productRepository.save(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        Assert.assertEquals("New productDto", productService.saveProductAsync(productDto, Boolean.FALSE).join().getName());
+        Mockito.verify(asyncSupplyChainIntegration, Mockito.times(0)).saveProduct(ArgumentMatchers.any());
+    }
+
     @Test
     public void success_get_empty_products() {
 
-        Iterable<Product> products = Arrays.asList();
-        Mockito.when(productRepository.findAll()).thenReturn(products);
-        Assert.assertTrue(productService.getProducts(Boolean.FALSE).getBundle().isEmpty());
+        List<ProductDTO> products = Arrays.asList();
+        Mockito.when(productRepository.findPage(ArgumentMatchers.any())).thenReturn(products);
+        Assert.assertTrue(productService.getProducts(Boolean.FALSE, null, null).getBundle().isEmpty());
+    }
+
+    @Test
+    public void success_get_product() {
+
+        ProductDTO productDto = ProductDTO.builder().id("123").name("New productDto").version(2L).build();
+        Mockito.when(productRepository.findDTOById("123")).thenReturn(Optional.of(productDto));
+
+        Assert.assertEquals(Optional.of(productDto), productService.getProduct("123"));
+        Assert.assertFalse(productService.getProduct("456").isPresent());
+        Mockito.verify(productRepository, Mockito.never()).findById(ArgumentMatchers.any());
     }
 
     @Test
@@ -172,16 +441,50 @@ public class ProductServiceImplTest {
                 .price(BigDecimal.TEN)
                 .build();
 
-        Product product = ProductUtils.parseProductDTOToEntity(productDto);
-        Mockito.when(productRepository.save(ArgumentMatchers.any())).thenReturn(product);
-        Mockito.when(productRepository.findById("123")).thenReturn(Optional.of(product));
+        Mockito.when(productRepository.updateById("123", "ProductDto updated", BigDecimal.TEN, 1)).thenReturn(1);
 
         Optional<ProductDTO> productDTO = productService.updateProduct(productDto, "123", Boolean.FALSE);
 
-        Mockito.verify(productRepository).save(ArgumentMatchers.any());
+        Mockito.verify(productRepository, Mockito.never()).findById(ArgumentMatchers.any());
+        Mockito.verify(productRepository, Mockito.never()).save(ArgumentMatchers.any());
+        Mockito.verify(productOutbox).record(ArgumentMatchers.eq(OutboxEvent.Operation.UPDATE), ArgumentMatchers.any(Product.class));
 
         Assert.assertTrue(productDTO.isPresent());
         Assert.assertTrue(productDTO.get().getName().equalsIgnoreCase("ProductDto updated"));
+        Assert.assertNull(productDTO.get().getVersion());
+    }
+
+    @Test
+    public void success_update_product_at_version() {
+        ProductDTO productDto = ProductDTO.builder()
+                .name("ProductDto updated")
+                .quantity(1)
+                .price(BigDecimal.TEN)
+                .version(3L)
+                .build();
+
+        Mockito.when(productRepository.updateByIdAndVersion("123", 3L, "ProductDto updated", BigDecimal.TEN, 1)).thenReturn(1);
+
+        Optional<ProductDTO> productDTO = productService.updateProduct(productDto, "123", Boolean.FALSE);
+
+        Assert.assertEquals("123", productDTO.get().getId());
+        Assert.assertEquals(Long.valueOf(4), productDTO.get().getVersion());
+        Mockito.verify(productRepository, Mockito.never()).existsById(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void stale_version_update_conflicts() {
+        ProductDTO productDto = ProductDTO.builder()
+                .name("ProductDto updated")
+                .version(3L)
+                .build();
+
+        Mockito.when(productRepository.updateByIdAndVersion(ArgumentMatchers.eq("123"), ArgumentMatchers.eq(3L),
+                ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(0);
+        Mockito.when(productRepository.existsById("123")).thenReturn(true);
+
+        Assertions.assertThrows(ProductConflictException.class, () -> productService.updateProduct(productDto, "123", Boolean.FALSE));
+        Mockito.verify(productOutbox, Mockito.never()).record(ArgumentMatchers.any(), ArgumentMatchers.any());
     }
 
     @Test
@@ -213,15 +516,111 @@ public class ProductServiceImplTest {
                 .price(BigDecimal.TEN)
                 .build();
 
-        Product product = ProductUtils.parseProductDTOToEntity(productDto);
-        Mockito.when(productRepository.save(ArgumentMatchers.any())).thenReturn(product);
-        Mockito.when(productRepository.findById(ArgumentMatchers.any())).thenReturn(Optional.empty());
+        Mockito.when(productRepository.updateById(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenReturn(0);
 
         Assertions.assertThrows(ProductException.class, () -> {
             Optional<ProductDTO> productDTO = productService.updateProduct(productDto, "123", Boolean.FALSE);
             Assert.assertTrue(!productDTO.isPresent());
         });
         Mockito.verify(productRepository, Mockito.times(0)).save(ArgumentMatchers.any());
+        Mockito.verify(productOutbox, Mockito.never()).record(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void success_search_products() {
+        ProductSearchDTO search = ProductSearchDTO.builder().maxPrice(BigDecimal.valueOf(50)).quantityBelow(10).build();
+        List<ProductDTO> products = Arrays.asList(ProductDTO.builder().id("1").build(), ProductDTO.builder().id("2").build(),
+                ProductDTO.builder().id("3").build());
+        Mockito.when(productRepository.search(null, null, BigDecimal.valueOf(50), 10, "0", 3)).thenReturn(products);
+
+        ProductsDTO productsDTO = productService.searchProducts(search, 2, ProductUtils.encodeCursor("0"));
+
+        Assert.assertEquals(2, productsDTO.getBundle().size());
+        Assert.assertEquals("2", ProductUtils.decodeCursor(productsDTO.getNext()));
+    }
+
+    @Test
+    public void writes_keep_in_memory_views_in_sync() {
+        ProductDTO productDto = ProductDTO.builder().name("Lamp").price(BigDecimal.TEN).quantity(3).build();
+        Mockito.when(productRepository.save(ArgumentMatchers.any())).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(productRepository.updateById(ArgumentMatchers.eq("123"), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenReturn(1);
+
+        ProductDTO saved = productService.saveProduct(productDto, Boolean.FALSE);
+        productService.updateProduct(ProductDTO.builder().name("Desk lamp").build(), "123", Boolean.FALSE);
+        productService.deleteProduct("123", Boolean.FALSE);
+
+        Mockito.verify(productNameIndex).put(saved.getId(), "Lamp");
+        Mockito.verify(productNameIndex).put("123", "Desk lamp");
+        Mockito.verify(productNameIndex).remove("123");
+        Mockito.verify(inventorySnapshot).put(saved.getId(), BigDecimal.TEN, 3);
+        Mockito.verify(inventorySnapshot).put("123", null, null);
+        Mockito.verify(inventorySnapshot).remove("123");
+    }
+
+    @Test
+    public void committed_save_answered_when_index_fails() {
+        ProductDTO productDto = ProductDTO.builder().name("Lamp").price(BigDecimal.TEN).quantity(3).build();
+        Mockito.when(productRepository.save(ArgumentMatchers.any())).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.doThrow(new IllegalStateException("index failed")).when(productNameIndex)
+                .put(ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        ProductDTO saved = productService.saveProduct(productDto, Boolean.FALSE);
+
+        Assert.assertEquals("Lamp", saved.getName());
+        Mockito.verify(productOutbox).record(ArgumentMatchers.eq(OutboxEvent.Operation.SAVE), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void delete_racing_update_applied_to_views_after_it() throws Exception {
+        CountDownLatch updating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(productRepository.updateById(ArgumentMatchers.eq("123"), ArgumentMatchers.any(), ArgumentMatchers.any(),
+                ArgumentMatchers.any())).thenAnswer(invocation -> {
+            updating.countDown();
+            release.await();
+            return 1;
+        });
+        Mockito.when(productRepository.findById("123")).thenReturn(Optional.of(Product.builder().id("123").build()));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> update = executor.submit(() ->
+                    productService.updateProduct(ProductDTO.builder().name("Desk lamp").build(), "123", Boolean.FALSE));
+            updating.await();
+            Future<?> delete = executor.submit(() -> productService.deleteProduct("123", Boolean.FALSE));
+
+            // the delete waits for the update to be indexed before it touches the database
+            Mockito.verify(productRepository, Mockito.after(200).never()).findById("123");
+            release.countDown();
+            update.get(5, TimeUnit.SECONDS);
+            delete.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        InOrder inOrder = Mockito.inOrder(productNameIndex, inventorySnapshot);
+        inOrder.verify(productNameIndex).put("123", "Desk lamp");
+        inOrder.verify(inventorySnapshot).put("123", null, null);
+        inOrder.verify(productNameIndex).remove("123");
+        inOrder.verify(inventorySnapshot).remove("123");
+    }
+
+    @Test
+    public void inventory_stats_default_to_configured_thresholds() {
+        productService.getInventoryStats(null, null);
+
+        Mockito.verify(inventorySnapshot).stats(ProductServiceImpl.DEFAULT_LOW_STOCK, ProductServiceImpl.DEFAULT_PRICE_BUCKETS);
+        Mockito.verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void suggestions_come_from_name_index() {
+        List<ProductDTO> suggestions = Arrays.asList(ProductDTO.builder().id("1").name("Lamp").build());
+        Mockito.when(productNameIndex.suggest("la", ProductServiceImpl.DEFAULT_SUGGESTIONS)).thenReturn(suggestions);
+
+        Assert.assertEquals(suggestions, productService.suggestProducts("la", null));
+        Mockito.verifyNoInteractions(productRepository);
     }
 
 }
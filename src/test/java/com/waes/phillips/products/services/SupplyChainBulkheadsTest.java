@@ -0,0 +1,128 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.impl.SupplyChainBulkheads;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadConfig;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SupplyChainBulkheadsTest {
+
+    private SupplyChainBulkheads bulkheads;
+    private ThreadPoolBulkheadRegistry threadPoolBulkheadRegistry;
+
+    @After
+    public void tearDown() throws Exception {
+        bulkheads.close();
+    }
+
+    @Test
+    public void async_read_over_the_limit_is_rejected() {
+        bulkheads = bulkheads("semaphore");
+        CompletableFuture<String> slowRead = new CompletableFuture<>();
+        CompletableFuture<String> first = bulkheads.readAsync(() -> slowRead);
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> bulkheads.readAsync(() -> CompletableFuture.completedFuture("other")).join());
+        Assert.assertTrue(exception.getCause() instanceof BulkheadFullException);
+
+        slowRead.complete("catalog");
+        Assert.assertEquals("catalog", first.join());
+        Assert.assertEquals("other", bulkheads.readAsync(() -> CompletableFuture.completedFuture("other")).join());
+    }
+
+    @Test
+    public void reads_and_writes_have_separate_limits() {
+        bulkheads = bulkheads("semaphore");
+        bulkheads.readAsync(CompletableFuture::new);
+
+        Assert.assertEquals("saved", bulkheads.writeAsync(() -> CompletableFuture.completedFuture("saved")).join());
+    }
+
+    @Test
+    public void semaphore_read_rethrows_call_error() {
+        bulkheads = bulkheads("semaphore");
+
+        Assertions.assertThrows(SupplyChainErrorException.class, () -> bulkheads.read(() -> {
+            throw new SupplyChainErrorException("Supplier down");
+        }));
+        Assert.assertEquals("catalog", bulkheads.read(() -> "catalog"));
+    }
+
+    @Test
+    public void thread_pool_read_runs_on_bulkhead_thread() {
+        bulkheads = bulkheads("threadpool");
+        Thread caller = Thread.currentThread();
+
+        Assert.assertNotSame(caller, bulkheads.read(Thread::currentThread));
+        Assert.assertSame(caller, bulkheads.readOnCallerThread(Thread::currentThread));
+        Assertions.assertThrows(SupplyChainErrorException.class, () -> bulkheads.read(() -> {
+            throw new SupplyChainErrorException("Supplier down");
+        }));
+    }
+
+    @Test
+    public void thread_pool_read_over_the_limit_is_rejected() throws InterruptedException {
+        bulkheads = bulkheads("threadpool");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread runningCaller = new Thread(() -> bulkheads.read(() -> {
+            started.countDown();
+            return await(release);
+        }));
+        runningCaller.start();
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread queuedCaller = new Thread(() -> bulkheads.read(() -> await(release)));
+        queuedCaller.start();
+
+        awaitQueued();
+
+        Assertions.assertThrows(BulkheadFullException.class, () -> bulkheads.read(() -> "catalog"));
+
+        release.countDown();
+        runningCaller.join(5000);
+        queuedCaller.join(5000);
+    }
+
+    private void awaitQueued() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (threadPoolBulkheadRegistry.bulkhead(SupplyChainBulkheads.READ_BULKHEAD).getMetrics().getQueueDepth() < 1) {
+            Assert.assertTrue("Caller was not queued", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private SupplyChainBulkheads bulkheads(String type) {
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        threadPoolBulkheadRegistry = ThreadPoolBulkheadRegistry.of(ThreadPoolBulkheadConfig.custom()
+                .coreThreadPoolSize(1)
+                .maxThreadPoolSize(1)
+                .queueCapacity(1)
+                .build());
+        return new SupplyChainBulkheads(bulkheadRegistry, threadPoolBulkheadRegistry, type);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
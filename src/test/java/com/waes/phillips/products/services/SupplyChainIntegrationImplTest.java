@@ -1,10 +1,24 @@
 package com.waes.phillips.products.services;
 
 import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
 import com.waes.phillips.products.integration.SupplyChainIntegration;
 import com.waes.phillips.products.integration.impl.SupplyChainIntegrationImpl;
+import com.waes.phillips.products.integration.impl.SupplyChainBulkheads;
+import com.waes.phillips.products.integration.impl.SupplyChainSingleFlight;
+import com.waes.phillips.products.integration.impl.SupplyChainSnapshotCache;
+import com.waes.phillips.products.integration.impl.SupplyChainMirror;
+import com.waes.phillips.products.integration.impl.SupplyChainWriteBatcher;
 import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import com.waes.phillips.products.utils.Deadline;
 import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
@@ -12,8 +26,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
 
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Optional;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,7 +47,12 @@ public class SupplyChainIntegrationImplTest {
 
     @Before
     public void setUp() {
-        supplyChainIntegration = new SupplyChainIntegrationImpl("http://localhost", "/resource", httpUtils);
+        supplyChainIntegration = new SupplyChainIntegrationImpl("http://localhost", "/resource", httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), new SupplyChainSnapshotCache(Duration.ofSeconds(30),
+                Duration.ofSeconds(300), 100, Runnable::run, Clock.systemUTC()),
+                new SupplyChainSingleFlight(new SimpleMeterRegistry()), TimeLimiterRegistry.ofDefaults(),
+                new SupplyChainBulkheads(BulkheadRegistry.ofDefaults(), ThreadPoolBulkheadRegistry.ofDefaults(), "semaphore"),
+                SupplyChainWriteBatcher.disabled(), SupplyChainMirror.disabled());
         MockitoAnnotations.initMocks(this);
     }
 
@@ -48,7 +71,7 @@ public class SupplyChainIntegrationImplTest {
         supplyChainIntegration.saveProduct(productDto);
 
         Mockito.verify(httpUtils, Mockito.times(1))
-                .executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
     }
 
     @Test
@@ -60,7 +83,55 @@ public class SupplyChainIntegrationImplTest {
         supplyChainIntegration.getProducts();
 
         Mockito.verify(httpUtils, Mockito.times(1))
-                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void success_get_products_from_snapshot(){
+
+        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(ProductsDTO.builder().bundle(Arrays.asList()).build());
+
+        supplyChainIntegration.getProducts();
+        supplyChainIntegration.getProducts();
+
+        Mockito.verify(httpUtils, Mockito.times(1))
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void success_get_products_after_save_evicts_snapshot(){
+
+        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenReturn(ProductsDTO.builder().bundle(Arrays.asList()).build());
+
+        supplyChainIntegration.getProducts();
+        supplyChainIntegration.saveProduct(ProductDTO.builder().name("Product").build());
+        supplyChainIntegration.getProducts();
+
+        Mockito.verify(httpUtils, Mockito.times(2))
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void get_products_within_deadline(){
+        ArgumentCaptor<Deadline> deadline = ArgumentCaptor.forClass(Deadline.class);
+        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.eq(url), ArgumentMatchers.eq(ProductsDTO.class), deadline.capture()))
+                .thenReturn(ProductsDTO.builder().build());
+
+        supplyChainIntegration.getProducts();
+
+        Assert.assertTrue(deadline.getValue().isBounded());
+        Assert.assertFalse(deadline.getValue().allows(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void success_for_each_product(){
+
+        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.eq(url), ArgumentMatchers.eq("bundle"),
+                ArgumentMatchers.eq(ProductDTO.class), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class))).thenReturn(2L);
+
+        Assert.assertEquals(2L, supplyChainIntegration.forEachProduct(product -> { }));
     }
 
     @Test
@@ -72,13 +143,13 @@ public class SupplyChainIntegrationImplTest {
                 .quantity(1)
                 .price(BigDecimal.TEN)
                 .build();
-        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
+        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
                 .thenReturn(productDto);
 
         supplyChainIntegration.getProduct("123");
 
         Mockito.verify(httpUtils, Mockito.times(1))
-                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
     }
 
     @Test
@@ -90,29 +161,40 @@ public class SupplyChainIntegrationImplTest {
                 .quantity(1)
                 .price(BigDecimal.TEN)
                 .build();
-        Mockito.when(httpUtils.executeRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenReturn(null);
-        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
+        Mockito.when(httpUtils.executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
                 .thenReturn(productDto);
 
         supplyChainIntegration.deleteProduct("123");
 
         Mockito.verify(httpUtils, Mockito.times(1))
-                .executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+        Mockito.verify(httpUtils, Mockito.times(0))
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
     }
 
     @Test
     public void success_delete_product_no_found(){
 
-        Mockito.when(httpUtils.executeRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenReturn(null);
+        Mockito.when(httpUtils.executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenThrow(new SupplyChainErrorException("Not found", HttpStatus.NOT_FOUND));
 
         Assertions.assertThrows(ProductException.class, () -> {
             supplyChainIntegration.deleteProduct("123");
         });
 
         Mockito.verify(httpUtils, Mockito.times(0))
-                .executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+    }
+
+    @Test
+    public void failure_delete_product_supplier_error(){
+
+        Mockito.when(httpUtils.executeDeleteRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenThrow(new SupplyChainErrorException("Failed to access resource"));
+
+        Assertions.assertThrows(SupplyChainErrorException.class, () -> {
+            supplyChainIntegration.deleteProduct("123");
+        });
     }
 
     @Test
@@ -124,15 +206,15 @@ public class SupplyChainIntegrationImplTest {
                 .quantity(1)
                 .price(BigDecimal.TEN)
                 .build();
-        Mockito.when(httpUtils.executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenReturn(productDto);
-        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
+        Mockito.when(httpUtils.executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
                 .thenReturn(productDto);
 
         supplyChainIntegration.updateProduct(productDto, "123");
 
         Mockito.verify(httpUtils, Mockito.times(1))
-                .executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
+        Mockito.verify(httpUtils, Mockito.times(0))
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
     }
 
     @Test
@@ -145,14 +227,14 @@ public class SupplyChainIntegrationImplTest {
                 .price(BigDecimal.TEN)
                 .build();
 
-        Mockito.when(httpUtils.executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any()))
-                .thenReturn(null);
+        Mockito.when(httpUtils.executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class)))
+                .thenThrow(new SupplyChainErrorException("Not found", HttpStatus.NOT_FOUND));
 
         Assertions.assertThrows(ProductException.class, () -> {
             supplyChainIntegration.updateProduct(productDto, "123");
         });
 
         Mockito.verify(httpUtils, Mockito.times(0))
-                .executePostRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+                .executeGetRequest(ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any(Deadline.class));
     }
 }
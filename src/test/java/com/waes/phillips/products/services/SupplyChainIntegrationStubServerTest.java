@@ -0,0 +1,229 @@
+package com.waes.phillips.products.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.waes.phillips.products.exception.ProductException;
+import com.waes.phillips.products.exception.SupplyChainFailurePredicate;
+import com.waes.phillips.products.integration.AsyncSupplyChainIntegration;
+import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.integration.impl.AsyncSupplyChainIntegrationImpl;
+import com.waes.phillips.products.integration.impl.SupplyChainIntegrationImpl;
+import com.waes.phillips.products.integration.impl.SupplyChainBulkheads;
+import com.waes.phillips.products.integration.impl.SupplyChainSingleFlight;
+import com.waes.phillips.products.integration.impl.SupplyChainSnapshotCache;
+import com.waes.phillips.products.integration.impl.SupplyChainMirror;
+import com.waes.phillips.products.integration.impl.SupplyChainWriteBatcher;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResponseDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResultDTO;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Runs the integrations against a local stand-in of the supply chain API that records every request.
+ */
+public class SupplyChainIntegrationStubServerTest {
+
+    private static final String RESOURCE_PATH = "/test/supply-chain";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PRODUCT_BODY = "{\"id\":\"123\",\"name\":\"Product\",\"price\":10,\"quantity\":1}";
+
+    private HttpServer server;
+    private ScheduledExecutorService retryScheduler;
+    private List<String> requests;
+    private List<Integer> bulkSizes;
+    private HttpUtils httpUtils;
+    private SupplyChainBulkheads bulkheads;
+    private SupplyChainSnapshotCache snapshotCache;
+    private SupplyChainSingleFlight singleFlight;
+    private String baseUrl;
+    private SupplyChainIntegration supplyChainIntegration;
+    private AsyncSupplyChainIntegration asyncSupplyChainIntegration;
+
+    private ProductDTO productDto = ProductDTO.builder()
+            .name("Product")
+            .quantity(1)
+            .price(BigDecimal.TEN)
+            .build();
+
+    @Before
+    public void setUp() throws IOException {
+        requests = new CopyOnWriteArrayList<>();
+        bulkSizes = new CopyOnWriteArrayList<>();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(RESOURCE_PATH, exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            exchange.getRequestBody().readAllBytes();
+            if (exchange.getRequestURI().getPath().endsWith("/missing")) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if ("DELETE".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                byte[] body = PRODUCT_BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.createContext(RESOURCE_PATH + "/bulk", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            List<SupplyChainBulkItemDTO> items = MAPPER.readValue(exchange.getRequestBody(), new TypeReference<List<SupplyChainBulkItemDTO>>() { });
+            bulkSizes.add(items.size());
+            List<SupplyChainBulkResultDTO> results = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                SupplyChainBulkItemDTO item = items.get(i);
+                if ("missing".equals(item.getId())) {
+                    results.add(SupplyChainBulkResultDTO.builder().index(i).status(404).error("Product not found").build());
+                } else {
+                    String id = Objects.isNull(item.getId()) ? "new-" + i : item.getId();
+                    results.add(SupplyChainBulkResultDTO.builder().index(i).status(200)
+                            .product(ProductDTO.builder().id(id).name(item.getProduct().getName()).build()).build());
+                }
+            }
+            byte[] body = MAPPER.writeValueAsBytes(SupplyChainBulkResponseDTO.builder().results(results).build());
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        Retry retry = Retry.of("stub", RetryConfig.custom()
+                .maxAttempts(3)
+                .waitDuration(Duration.ofMillis(10))
+                .retryOnException(new SupplyChainFailurePredicate())
+                .build());
+        httpUtils = new HttpUtils(new ObjectMapper(), retry, retryScheduler);
+        singleFlight = new SupplyChainSingleFlight(new SimpleMeterRegistry());
+        bulkheads = new SupplyChainBulkheads(BulkheadRegistry.ofDefaults(), ThreadPoolBulkheadRegistry.ofDefaults(), "semaphore");
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        snapshotCache = new SupplyChainSnapshotCache(Duration.ofSeconds(30),
+                Duration.ofSeconds(300), 100, Runnable::run, Clock.systemUTC());
+
+        supplyChainIntegration = new SupplyChainIntegrationImpl(baseUrl, RESOURCE_PATH, httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), snapshotCache, singleFlight, TimeLimiterRegistry.ofDefaults(), bulkheads,
+                SupplyChainWriteBatcher.disabled(), SupplyChainMirror.disabled());
+        asyncSupplyChainIntegration = new AsyncSupplyChainIntegrationImpl(baseUrl, RESOURCE_PATH, httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), snapshotCache, singleFlight, TimeLimiterRegistry.ofDefaults(), retryScheduler, bulkheads,
+                SupplyChainWriteBatcher.disabled(), SupplyChainMirror.disabled());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        retryScheduler.shutdownNow();
+    }
+
+    @Test
+    public void update_product_is_a_single_request() {
+        ProductDTO updated = supplyChainIntegration.updateProduct(productDto, "123").get();
+
+        Assert.assertEquals("123", updated.getId());
+        Assert.assertEquals(List.of("POST " + RESOURCE_PATH + "/123"), requests);
+    }
+
+    @Test
+    public void delete_product_is_a_single_request() {
+        supplyChainIntegration.deleteProduct("123");
+
+        Assert.assertEquals(List.of("DELETE " + RESOURCE_PATH + "/123"), requests);
+    }
+
+    @Test
+    public void update_missing_product_is_a_single_request() {
+        Assertions.assertThrows(ProductException.class, () -> supplyChainIntegration.updateProduct(productDto, "missing"));
+
+        Assert.assertEquals(List.of("POST " + RESOURCE_PATH + "/missing"), requests);
+    }
+
+    @Test
+    public void get_missing_product_is_not_retried() {
+        Assertions.assertThrows(RuntimeException.class, () -> supplyChainIntegration.getProduct("missing"));
+
+        Assert.assertEquals(List.of("GET " + RESOURCE_PATH + "/missing"), requests);
+    }
+
+    @Test
+    public void async_delete_missing_product_is_a_single_request() {
+        CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                () -> asyncSupplyChainIntegration.deleteProduct("missing").join());
+
+        Assert.assertTrue(exception.getCause() instanceof ProductException);
+        Assert.assertEquals(List.of("DELETE " + RESOURCE_PATH + "/missing"), requests);
+    }
+
+    @Test
+    public void async_update_product_is_a_single_request() {
+        Assert.assertTrue(asyncSupplyChainIntegration.updateProduct(productDto, "123").join().isPresent());
+
+        Assert.assertEquals(List.of("POST " + RESOURCE_PATH + "/123"), requests);
+    }
+
+    @Test
+    public void concurrent_writes_batched_in_one_bulk_request() {
+        SupplyChainWriteBatcher writeBatcher = new SupplyChainWriteBatcher(true, 4, Duration.ofSeconds(5),
+                baseUrl + RESOURCE_PATH + "/bulk", httpUtils, bulkheads, TimeLimiterRegistry.ofDefaults(),
+                new SimpleMeterRegistry(), retryScheduler);
+        AsyncSupplyChainIntegration batchedIntegration = new AsyncSupplyChainIntegrationImpl(baseUrl, RESOURCE_PATH, httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), snapshotCache, singleFlight, TimeLimiterRegistry.ofDefaults(), retryScheduler,
+                bulkheads, writeBatcher, SupplyChainMirror.disabled());
+
+        CompletableFuture<ProductDTO> first = batchedIntegration.saveProduct(ProductDTO.builder().name("first").build());
+        CompletableFuture<ProductDTO> second = batchedIntegration.saveProduct(ProductDTO.builder().name("second").build());
+        CompletableFuture<Optional<ProductDTO>> update = batchedIntegration.updateProduct(ProductDTO.builder().name("third").build(), "123");
+        CompletableFuture<Optional<ProductDTO>> missing = batchedIntegration.updateProduct(productDto, "missing");
+
+        Assert.assertEquals("first", first.join().getName());
+        Assert.assertEquals("second", second.join().getName());
+        Assert.assertEquals("123", update.join().get().getId());
+        CompletionException exception = Assertions.assertThrows(CompletionException.class, missing::join);
+        Assert.assertTrue(exception.getCause() instanceof ProductException);
+        Assert.assertEquals(List.of("POST " + RESOURCE_PATH + "/bulk"), requests);
+        Assert.assertEquals(List.of(4), bulkSizes);
+    }
+
+    @Test
+    public void blocking_write_sent_after_max_delay() {
+        SupplyChainWriteBatcher writeBatcher = new SupplyChainWriteBatcher(true, 50, Duration.ofMillis(10),
+                baseUrl + RESOURCE_PATH + "/bulk", httpUtils, bulkheads, TimeLimiterRegistry.ofDefaults(),
+                new SimpleMeterRegistry(), retryScheduler);
+        SupplyChainIntegration batchedIntegration = new SupplyChainIntegrationImpl(baseUrl, RESOURCE_PATH, httpUtils,
+                CircuitBreakerRegistry.ofDefaults(), snapshotCache, singleFlight, TimeLimiterRegistry.ofDefaults(), bulkheads,
+                writeBatcher, SupplyChainMirror.disabled());
+
+        Assert.assertEquals("new-0", batchedIntegration.saveProduct(productDto).getId());
+        Assertions.assertThrows(ProductException.class, () -> batchedIntegration.updateProduct(productDto, "missing"));
+        Assert.assertEquals(List.of(1, 1), bulkSizes);
+    }
+}
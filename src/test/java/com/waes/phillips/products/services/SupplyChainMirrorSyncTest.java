@@ -0,0 +1,192 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.data.MirroredProduct;
+import com.waes.phillips.products.data.repository.MirroredProductRepository;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.SupplyChainIntegration;
+import com.waes.phillips.products.integration.impl.SupplyChainMirror;
+import com.waes.phillips.products.model.ProductDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+public class SupplyChainMirrorSyncTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private SupplyChainIntegration supplyChainIntegration;
+    private MirroredProductRepository mirroredProductRepository;
+    private EntityManager entityManager;
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicReference<Instant> now;
+    private SupplyChainMirror mirror;
+    private SupplyChainMirrorSync mirrorSync;
+
+    @Before
+    public void setUp() {
+        supplyChainIntegration = Mockito.mock(SupplyChainIntegration.class);
+        mirroredProductRepository = Mockito.mock(MirroredProductRepository.class);
+        entityManager = Mockito.mock(EntityManager.class);
+        TransactionTemplate transactionTemplate = Mockito.mock(TransactionTemplate.class);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(ArgumentMatchers.any());
+        Mockito.when(transactionTemplate.execute(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        Mockito.when(mirroredProductRepository.deleteByIdInWrittenBefore(ArgumentMatchers.any(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.<Collection<String>>getArgument(0).size());
+        meterRegistry = new SimpleMeterRegistry();
+        now = new AtomicReference<>(NOW);
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        };
+        mirror = new SupplyChainMirror(true, Duration.ofSeconds(60), mirroredProductRepository, meterRegistry, clock);
+        mirrorSync = new SupplyChainMirrorSync(supplyChainIntegration, mirror, mirroredProductRepository, transactionTemplate,
+                entityManager, meterRegistry, Duration.ofSeconds(30), 2, clock);
+    }
+
+    private static ProductDTO product(String id, String name) {
+        return ProductDTO.builder().id(id).name(name).price(BigDecimal.ONE).quantity(1).build();
+    }
+
+    private void mirrored(ProductDTO... products) {
+        Mockito.when(mirroredProductRepository.findAllFingerprints()).thenReturn(Arrays.stream(products)
+                .map(product -> new Object[]{product.getId(), SupplyChainMirror.fingerprint(product)})
+                .collect(Collectors.toList()));
+    }
+
+    private void downstream(ProductDTO... products) {
+        Mockito.when(supplyChainIntegration.forEachProduct(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            Consumer<ProductDTO> consumer = invocation.getArgument(0);
+            Arrays.stream(products).forEach(consumer);
+            return (long) products.length;
+        });
+    }
+
+    @Test
+    public void only_changes_are_written() {
+        mirrored(product("1", "same"), product("2", "old name"), product("3", "gone"));
+        downstream(product("1", "same"), product("2", "new name"), product("4", "new"));
+
+        Assert.assertEquals(3, mirrorSync.sync());
+
+        ArgumentCaptor<MirroredProduct> persisted = ArgumentCaptor.forClass(MirroredProduct.class);
+        Mockito.verify(entityManager, Mockito.times(2)).persist(persisted.capture());
+        Assert.assertEquals(Arrays.asList("2", "4"), Arrays.asList(persisted.getAllValues().get(0).getId(), persisted.getAllValues().get(1).getId()));
+        Assert.assertEquals("new name", persisted.getAllValues().get(0).getName());
+        Mockito.verify(mirroredProductRepository).deleteByIdInWrittenBefore(Arrays.asList("2", "4"), NOW);
+        Mockito.verify(mirroredProductRepository).deleteByIdInWrittenBefore(Collections.singletonList("3"), NOW);
+        Assert.assertEquals(1, meterRegistry.counter(SupplyChainMirrorSync.CHANGES_METRIC, "change", "updated").count(), 0);
+    }
+
+    @Test
+    public void unchanged_catalog_writes_nothing() {
+        mirrored(product("1", "same"));
+        downstream(product("1", "same"), product("1", "same"));
+
+        Assert.assertEquals(0, mirrorSync.sync());
+
+        Mockito.verify(entityManager, Mockito.never()).persist(ArgumentMatchers.any());
+        Mockito.verify(mirroredProductRepository, Mockito.never()).deleteByIdInWrittenBefore(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    public void changes_written_in_chunks() {
+        mirrored();
+        downstream(product("1", "a"), product("2", "b"), product("3", "c"));
+
+        mirrorSync.sync();
+
+        Mockito.verify(mirroredProductRepository).deleteByIdInWrittenBefore(Arrays.asList("1", "2"), NOW);
+        Mockito.verify(mirroredProductRepository).deleteByIdInWrittenBefore(Collections.singletonList("3"), NOW);
+        Mockito.verify(entityManager, Mockito.times(2)).flush();
+    }
+
+    @Test
+    public void products_written_since_sync_started_are_kept() {
+        mirrored(product("1", "old name"), product("2", "gone"), product("3", "old name"));
+        downstream(product("1", "stale name"), product("3", "new name"));
+        // 1 was updated and 2 created by downstream writes while the catalog was streamed
+        Mockito.when(mirroredProductRepository.findIdsWrittenSince(Arrays.asList("1", "3"), NOW)).thenReturn(Collections.singletonList("1"));
+        Mockito.when(mirroredProductRepository.deleteByIdInWrittenBefore(Collections.singletonList("2"), NOW)).thenReturn(0);
+
+        Assert.assertEquals(1, mirrorSync.sync());
+
+        ArgumentCaptor<MirroredProduct> persisted = ArgumentCaptor.forClass(MirroredProduct.class);
+        Mockito.verify(entityManager).persist(persisted.capture());
+        Assert.assertEquals("3", persisted.getValue().getId());
+        Assert.assertEquals(0, meterRegistry.counter(SupplyChainMirrorSync.CHANGES_METRIC, "change", "deleted").count(), 0);
+    }
+
+    @Test
+    public void mirror_served_only_while_fresh() {
+        Mockito.when(mirroredProductRepository.findById("1")).thenReturn(Optional.of(SupplyChainMirror.toEntity(product("1", "a"), NOW)));
+        Assert.assertFalse(mirror.getProduct("1").isPresent());
+
+        mirrored();
+        downstream();
+        mirrorSync.sync();
+        now.set(NOW.plusSeconds(60));
+        Assert.assertEquals("a", mirror.getProduct("1").get().getName());
+        Assert.assertEquals(60, meterRegistry.get(SupplyChainMirror.LAG_METRIC).gauge().value(), 0);
+
+        now.set(NOW.plusSeconds(61));
+        Assert.assertFalse(mirror.getProduct("1").isPresent());
+        Assert.assertFalse(mirror.getProducts().isPresent());
+    }
+
+    @Test
+    public void failed_sync_keeps_last_sync_time() {
+        mirrored();
+        downstream();
+        mirrorSync.sync();
+        now.set(NOW.plusSeconds(30));
+        Mockito.doThrow(new SupplyChainErrorException("Failed to access resource"))
+                .when(supplyChainIntegration).forEachProduct(ArgumentMatchers.any());
+
+        Assertions.assertThrows(SupplyChainErrorException.class, mirrorSync::sync);
+
+        Assert.assertEquals(Duration.ofSeconds(30), mirror.lag().get());
+        Mockito.when(mirroredProductRepository.findAllByOrderByIdAsc()).thenReturn(Collections.emptyList());
+        List<ProductDTO> bundle = mirror.getProducts().get().getBundle();
+        Assert.assertTrue(bundle.isEmpty());
+    }
+}
@@ -0,0 +1,199 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.impl.SupplyChainSingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SupplyChainSingleFlightTest {
+
+    private static final String KEY = "http://localhost/resource";
+    private static final int CALLERS = 5;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SupplyChainSingleFlight singleFlight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SupplyChainSingleFlight(meterRegistry);
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrent_calls_share_one_request() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitCallers(() -> singleFlight.execute(KEY, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "catalog";
+        }));
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Assert.assertEquals("catalog", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, meterRegistry.counter(SupplyChainSingleFlight.EXECUTED_METRIC).count(), 0);
+    }
+
+    @Test
+    public void concurrent_calls_share_the_error() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitCallers(() -> {
+            try {
+                return singleFlight.<String>execute(KEY, () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    throw new SupplyChainErrorException("Supplier down");
+                });
+            } catch (SupplyChainErrorException e) {
+                return e.getMessage();
+            }
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Assert.assertEquals("Supplier down", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void concurrent_calls_share_an_error_thrown_as_error() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitCallers(() -> {
+            try {
+                return singleFlight.<String>execute(KEY, () -> {
+                    await(release);
+                    throw new OutOfMemoryError("Response too large");
+                });
+            } catch (OutOfMemoryError e) {
+                return e.getMessage();
+            }
+        });
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Assert.assertEquals("Response too large", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals("later", singleFlight.execute(KEY, () -> "later"));
+    }
+
+    @Test
+    public void async_calls_share_one_request() {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> response = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(singleFlight.executeAsync(KEY, () -> {
+                calls.incrementAndGet();
+                return response;
+            }));
+        }
+        response.complete("catalog");
+
+        results.forEach(result -> Assert.assertEquals("catalog", result.join()));
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(CALLERS - 1, meterRegistry.counter(SupplyChainSingleFlight.COALESCED_METRIC).count(), 0);
+    }
+
+    @Test
+    public void async_calls_share_the_error() {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.executeAsync(KEY, () -> response);
+        CompletableFuture<String> second = singleFlight.executeAsync(KEY, () -> CompletableFuture.completedFuture("other"));
+
+        response.completeExceptionally(new SupplyChainErrorException("Supplier down"));
+
+        for (CompletableFuture<String> result : List.of(first, second)) {
+            try {
+                result.join();
+                Assert.fail("Expected the shared error");
+            } catch (CompletionException e) {
+                Assert.assertTrue(e.getCause() instanceof SupplyChainErrorException);
+            }
+        }
+    }
+
+    @Test
+    public void async_request_throwing_an_error_is_not_kept_in_flight() {
+        CompletableFuture<String> failed = singleFlight.executeAsync(KEY, () -> {
+            throw new StackOverflowError();
+        });
+
+        try {
+            failed.join();
+            Assert.fail("Expected the error");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+        Assert.assertEquals("later", singleFlight.executeAsync(KEY, () -> CompletableFuture.completedFuture("later")).join());
+    }
+
+    @Test
+    public void completed_requests_are_not_reused() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute(KEY, calls::incrementAndGet);
+        singleFlight.execute(KEY, calls::incrementAndGet);
+        singleFlight.executeAsync(KEY, () -> CompletableFuture.completedFuture(calls.incrementAndGet())).join();
+
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(0, meterRegistry.counter(SupplyChainSingleFlight.COALESCED_METRIC).count(), 0);
+    }
+
+    private <T> List<Future<T>> submitCallers(Callable<T> caller) {
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(caller));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter(SupplyChainSingleFlight.COALESCED_METRIC).count() < expected) {
+            Assert.assertTrue("Callers were not coalesced", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.impl.SupplyChainSnapshotCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SupplyChainSnapshotCacheTest {
+
+    private static final String KEY = "http://localhost/resource";
+
+    private MutableClock clock;
+    private List<Runnable> refreshes;
+    private SupplyChainSnapshotCache snapshotCache;
+
+    @Before
+    public void setUp() {
+        clock = new MutableClock();
+        refreshes = new ArrayList<>();
+        snapshotCache = new SupplyChainSnapshotCache(Duration.ofSeconds(30), Duration.ofSeconds(300), 10,
+                refreshes::add, clock);
+    }
+
+    @Test
+    public void success_fresh_snapshot_is_served_without_loading() {
+        AtomicInteger loads = new AtomicInteger();
+
+        snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet());
+        clock.advance(Duration.ofSeconds(10));
+
+        Assert.assertEquals("v1", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void success_stale_snapshot_is_served_while_refreshing() {
+        AtomicInteger loads = new AtomicInteger();
+
+        snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet());
+        clock.advance(Duration.ofSeconds(60));
+
+        Assert.assertEquals("v1", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+        Assert.assertEquals("v1", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+        Assert.assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        Assert.assertEquals("v2", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+    }
+
+    @Test
+    public void success_expired_snapshot_is_reloaded() {
+        AtomicInteger loads = new AtomicInteger();
+
+        snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet());
+        clock.advance(Duration.ofSeconds(400));
+
+        Assert.assertEquals("v2", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+    }
+
+    @Test
+    public void success_last_known_good_is_served_when_loading_fails() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            snapshotCache.get(KEY, () -> "v1");
+            clock.advance(Duration.ofSeconds(400));
+
+            String value = snapshotCache.get(KEY, () -> {
+                throw new SupplyChainErrorException("Failed to access resource");
+            });
+
+            Assert.assertEquals("v1", value);
+            Assert.assertEquals(Optional.of(400L), servedAge(request));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void success_last_known_good_is_served_when_async_load_fails_after_the_request_thread() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        ServletRequestAttributes requestAttributes = new ServletRequestAttributes(request);
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        try {
+            snapshotCache.getAsync(KEY, () -> CompletableFuture.completedFuture("v1")).join();
+            clock.advance(Duration.ofSeconds(400));
+
+            CompletableFuture<String> load = new CompletableFuture<>();
+            CompletableFuture<String> value = snapshotCache.getAsync(KEY, () -> load);
+            // the first dispatch of an asynchronous request ends before the supplier answers
+            requestAttributes.requestCompleted();
+            load.completeExceptionally(new SupplyChainErrorException("Failed to access resource"));
+
+            Assert.assertEquals("v1", value.join());
+            Assert.assertEquals(Optional.of(400L), servedAge(request));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void loaded_value_has_no_age() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            snapshotCache.getAsync(KEY, () -> CompletableFuture.completedFuture("v1")).join();
+
+            Assert.assertEquals(Optional.empty(), servedAge(request));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void failure_without_snapshot_is_propagated() {
+        Assertions.assertThrows(SupplyChainErrorException.class, () -> snapshotCache.get(KEY, () -> {
+            throw new SupplyChainErrorException("Failed to access resource");
+        }));
+    }
+
+    @Test
+    public void success_evict_forces_reload() {
+        AtomicInteger loads = new AtomicInteger();
+
+        snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet());
+        snapshotCache.evict(KEY);
+
+        Assert.assertEquals("v2", snapshotCache.get(KEY, () -> "v" + loads.incrementAndGet()));
+    }
+
+    private static Optional<Long> servedAge(MockHttpServletRequest request) {
+        return ((SupplyChainSnapshotCache.ServedAge) request.getAttribute(SupplyChainSnapshotCache.SNAPSHOT_AGE_ATTRIBUTE)).getSeconds();
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2021-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
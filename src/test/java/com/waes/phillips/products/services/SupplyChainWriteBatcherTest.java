@@ -0,0 +1,119 @@
+package com.waes.phillips.products.services;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.integration.impl.SupplyChainBulkheads;
+import com.waes.phillips.products.integration.impl.SupplyChainWriteBatcher;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.SupplyChainBulkItemDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResponseDTO;
+import com.waes.phillips.products.model.SupplyChainBulkResultDTO;
+import com.waes.phillips.products.utils.Deadline;
+import com.waes.phillips.products.utils.HttpUtils;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class SupplyChainWriteBatcherTest {
+
+    private HttpUtils httpUtils;
+    private ScheduledExecutorService scheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private SupplyChainWriteBatcher writeBatcher;
+
+    @Before
+    public void setUp() {
+        httpUtils = Mockito.mock(HttpUtils.class);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        meterRegistry = new SimpleMeterRegistry();
+        writeBatcher = new SupplyChainWriteBatcher(true, 2, Duration.ofSeconds(5), "http://localhost/resource/bulk",
+                httpUtils, new SupplyChainBulkheads(BulkheadRegistry.ofDefaults(), ThreadPoolBulkheadRegistry.ofDefaults(), "semaphore"),
+                TimeLimiterRegistry.ofDefaults(), meterRegistry, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private void bulkAnswers(CompletableFuture<SupplyChainBulkResponseDTO> response) {
+        Mockito.when(httpUtils.executePostRequestAsync(ArgumentMatchers.eq("http://localhost/resource/bulk"), ArgumentMatchers.any(List.class),
+                ArgumentMatchers.eq(SupplyChainBulkResponseDTO.class), ArgumentMatchers.any(Deadline.class))).thenReturn(response);
+    }
+
+    @Test
+    public void failed_bulk_request_fails_every_write() {
+        bulkAnswers(CompletableFuture.failedFuture(new SupplyChainErrorException("Failed to access resource")));
+
+        CompletableFuture<ProductDTO> first = writeBatcher.saveAsync(ProductDTO.builder().name("first").build());
+        CompletableFuture<ProductDTO> second = writeBatcher.updateAsync(ProductDTO.builder().name("second").build(), "123");
+
+        Assert.assertTrue(Assertions.assertThrows(CompletionException.class, first::join).getCause() instanceof SupplyChainErrorException);
+        Assert.assertTrue(Assertions.assertThrows(CompletionException.class, second::join).getCause() instanceof SupplyChainErrorException);
+        Assert.assertEquals(2, meterRegistry.summary(SupplyChainWriteBatcher.BATCH_SIZE_METRIC).totalAmount(), 0);
+    }
+
+    @Test
+    public void writes_get_their_own_result() {
+        bulkAnswers(CompletableFuture.completedFuture(SupplyChainBulkResponseDTO.builder().results(Collections.singletonList(
+                SupplyChainBulkResultDTO.builder().index(1).status(200).product(ProductDTO.builder().id("123").build()).build()))
+                .build()));
+
+        CompletableFuture<ProductDTO> first = writeBatcher.saveAsync(ProductDTO.builder().name("first").build());
+        CompletableFuture<ProductDTO> second = writeBatcher.updateAsync(ProductDTO.builder().name("second").build(), "123");
+
+        Assert.assertEquals("123", second.join().getId());
+        SupplyChainErrorException exception = (SupplyChainErrorException) Assertions.assertThrows(CompletionException.class, first::join).getCause();
+        Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getHttpStatus());
+    }
+
+    @Test
+    public void flush_sends_partial_batch() {
+        bulkAnswers(CompletableFuture.completedFuture(SupplyChainBulkResponseDTO.builder().results(Collections.singletonList(
+                SupplyChainBulkResultDTO.builder().index(0).status(201).product(ProductDTO.builder().id("new").build()).build()))
+                .build()));
+
+        CompletableFuture<ProductDTO> write = writeBatcher.saveAsync(ProductDTO.builder().name("first").build());
+        Assert.assertFalse(write.isDone());
+        writeBatcher.flush();
+
+        Assert.assertEquals("new", write.join().getId());
+    }
+
+    @Test
+    public void write_all_sent_right_away_in_requests_of_max_items() {
+        bulkAnswers(CompletableFuture.completedFuture(SupplyChainBulkResponseDTO.builder().results(Arrays.asList(
+                SupplyChainBulkResultDTO.builder().index(0).status(201).product(ProductDTO.builder().id("new").build()).build(),
+                SupplyChainBulkResultDTO.builder().index(1).status(404).error("Not found").build()))
+                .build()));
+        SupplyChainBulkItemDTO save = SupplyChainBulkItemDTO.builder().operation(SupplyChainBulkItemDTO.Operation.SAVE)
+                .product(ProductDTO.builder().name("first").build()).build();
+        SupplyChainBulkItemDTO update = SupplyChainBulkItemDTO.builder().operation(SupplyChainBulkItemDTO.Operation.UPDATE)
+                .id("123").product(ProductDTO.builder().name("second").build()).build();
+
+        List<CompletableFuture<ProductDTO>> results = writeBatcher.writeAll(Arrays.asList(save, update, save));
+
+        Assert.assertEquals("new", results.get(0).join().getId());
+        SupplyChainErrorException exception = (SupplyChainErrorException) Assertions.assertThrows(CompletionException.class, results.get(1)::join).getCause();
+        Assert.assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+        Assert.assertEquals("new", results.get(2).join().getId());
+        Assert.assertEquals(2, meterRegistry.summary(SupplyChainWriteBatcher.BATCH_SIZE_METRIC).count());
+    }
+}
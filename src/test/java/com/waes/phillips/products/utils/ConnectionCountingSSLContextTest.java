@@ -0,0 +1,23 @@
+package com.waes.phillips.products.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+
+public class ConnectionCountingSSLContextTest {
+
+    @Test
+    public void success_count_engines() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SSLContext sslContext = new ConnectionCountingSSLContext(SSLContext.getDefault(), meterRegistry);
+
+        sslContext.createSSLEngine("localhost", 443);
+        sslContext.createSSLEngine("localhost", 443);
+        sslContext.getDefaultSSLParameters();
+
+        Assert.assertEquals(2, meterRegistry.counter(ConnectionCountingSSLContext.CONNECTIONS_METRIC).count(), 0);
+        Assert.assertEquals(SSLContext.getDefault().getProtocol(), sslContext.getProtocol());
+    }
+}
@@ -0,0 +1,371 @@
+package com.waes.phillips.products.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import com.waes.phillips.products.model.ProductDTO;
+import com.waes.phillips.products.model.ProductsDTO;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpUtilsTest {
+
+    private static final String PRODUCTS_BODY = "{\"meta\":{\"page\":[1,2]},\"bundle\":["
+            + "{\"id\":\"123\",\"name\":\"Product\",\"price\":10,\"quantity\":1},"
+            + "null,"
+            + "{\"id\":\"456\",\"name\":\"Product 2\",\"price\":1,\"quantity\":2}],\"total\":2}";
+
+    private HttpUtils httpUtils;
+
+    @Before
+    public void setUp() {
+        httpUtils = new HttpUtils(new ObjectMapper(), Retry.ofDefaults("test"), null);
+    }
+
+    @Test
+    public void success_parse_response_elements() {
+        List<ProductDTO> products = new ArrayList<>();
+
+        long count = httpUtils.parseResponseElements(stream(PRODUCTS_BODY), "bundle", ProductDTO.class, products::add);
+
+        Assert.assertEquals(2, count);
+        Assert.assertEquals("123", products.get(0).getId());
+        Assert.assertEquals("456", products.get(1).getId());
+    }
+
+    @Test
+    public void success_parse_response_elements_without_array() {
+        List<ProductDTO> products = new ArrayList<>();
+
+        long count = httpUtils.parseResponseElements(stream("{\"total\":0}"), "bundle", ProductDTO.class, products::add);
+
+        Assert.assertEquals(0, count);
+        Assert.assertTrue(products.isEmpty());
+    }
+
+    @Test
+    public void failure_parse_response_elements_not_an_object() {
+        Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                httpUtils.parseResponseElements(stream("[]"), "bundle", ProductDTO.class, product -> { }));
+    }
+
+    @Test
+    public void success_parse_response_body_from_stream() {
+        ProductsDTO products = httpUtils.parseResponseBody(stream("{\"bundle\":[{\"id\":\"123\"}]}"), ProductsDTO.class);
+
+        Assert.assertEquals("123", products.getBundle().get(0).getId());
+    }
+
+    @Test
+    public void failure_parse_response_body_empty() {
+        Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                httpUtils.parseResponseBody(new byte[0], ProductDTO.class));
+    }
+
+    @Test
+    public void failure_request_timeout() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            HttpUtils timedHttpUtils = new HttpUtils(new ObjectMapper(), Retry.ofDefaults("test"), null,
+                    HttpClient.newHttpClient(), 100, new SimpleMeterRegistry(), RetryBudget.unlimited(), RequestHedger.disabled());
+            long start = System.nanoTime();
+
+            Assertions.assertThrows(SupplyChainErrorException.class, () -> timedHttpUtils.executeDeleteRequest(
+                    "http://localhost:" + server.getAddress().getPort() + "/slow", ProductDTO.class));
+            Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2000);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void success_responses_counted_by_version() throws IOException {
+        // retried like in the application when the pooled connection was closed under the attempt
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            HttpUtils countingHttpUtils = new HttpUtils(new ObjectMapper(), Retry.ofDefaults("test"), retryScheduler,
+                    HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), 1000, meterRegistry, RetryBudget.unlimited(), RequestHedger.disabled());
+            String url = "http://localhost:" + server.getAddress().getPort() + "/product";
+
+            countingHttpUtils.executeDeleteRequest(url, ProductDTO.class);
+            countingHttpUtils.executeDeleteRequestAsync(url, ProductDTO.class).join();
+
+            Assert.assertEquals(2, meterRegistry.counter(HttpUtils.RESPONSES_METRIC, "version", "HTTP_1_1").count(), 0);
+        } finally {
+            server.stop(0);
+            retryScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void retries_stop_at_deadline() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/unavailable", exchange -> {
+            calls.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(300)).build());
+            HttpUtils retryingHttpUtils = new HttpUtils(new ObjectMapper(), retry, null);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/unavailable";
+
+            Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                    retryingHttpUtils.executeGetRequest(url, ProductDTO.class, Deadline.after(Duration.ofMillis(500))));
+            Assert.assertEquals(2, calls.get());
+
+            calls.set(0);
+            Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                    retryingHttpUtils.executeGetRequest(url, ProductDTO.class, Deadline.NONE));
+            Assert.assertEquals(3, calls.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void retry_refused_when_its_own_wait_passes_deadline() throws IOException {
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/unavailable", exchange -> {
+            calls.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            // waits of 100ms then 400ms, the second one does not fit in the deadline
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3)
+                    .intervalFunction(IntervalFunction.ofExponentialBackoff(100, 4)).build());
+            HttpUtils retryingHttpUtils = new HttpUtils(new ObjectMapper(), retry, retryScheduler);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/unavailable";
+
+            long start = System.nanoTime();
+            SupplyChainErrorException exception = Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                    retryingHttpUtils.executeGetRequest(url, ProductDTO.class, Deadline.after(Duration.ofMillis(350))));
+            Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+            Assert.assertEquals(2, calls.get());
+            Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 300);
+
+            calls.set(0);
+            CompletionException asyncException = Assertions.assertThrows(CompletionException.class, () ->
+                    retryingHttpUtils.executeGetRequestAsync(url, ProductDTO.class, Deadline.after(Duration.ofMillis(350))).join());
+            Assert.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((SupplyChainErrorException) asyncException.getCause()).getHttpStatus());
+            Assert.assertEquals(2, calls.get());
+        } finally {
+            server.stop(0);
+            retryScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void write_retries_reuse_idempotency_key() throws IOException {
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        List<String> keys = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            keys.add(exchange.getRequestHeaders().getFirst(HttpUtils.IDEMPOTENCY_KEY_HEADER));
+            exchange.getRequestBody().readAllBytes();
+            if (keys.size() < 3) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.sendResponseHeaders(204, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(10)).build());
+            HttpUtils retryingHttpUtils = new HttpUtils(new ObjectMapper(), retry, retryScheduler);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/product";
+
+            retryingHttpUtils.executePostRequest(url, ProductDTO.builder().name("product").build(), ProductDTO.class);
+
+            Assert.assertEquals(3, keys.size());
+            Assert.assertNotNull(keys.get(0));
+            Assert.assertEquals(1, new HashSet<>(keys).size());
+
+            keys.clear();
+            retryingHttpUtils.executeDeleteRequestAsync(url, ProductDTO.class).join();
+            Assert.assertEquals(3, keys.size());
+            Assert.assertEquals(1, new HashSet<>(keys).size());
+        } finally {
+            server.stop(0);
+            retryScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void async_request_fails_when_its_retry_cannot_be_scheduled() throws IOException {
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        retryScheduler.shutdown();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(10)).build());
+            HttpUtils retryingHttpUtils = new HttpUtils(new ObjectMapper(), retry, retryScheduler);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/product";
+
+            CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                    () -> retryingHttpUtils.executeDeleteRequestAsync(url, ProductDTO.class).orTimeout(5, TimeUnit.SECONDS).join());
+            Assert.assertTrue(exception.getCause() instanceof SupplyChainErrorException);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void retries_stop_when_budget_exhausted() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/unavailable", exchange -> {
+            calls.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            RetryBudget retryBudget = new RetryBudget(0, 1, 1);
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(10))
+                    .retryOnException(retryBudget.limit(error -> true, meterRegistry.counter(HttpUtils.RETRY_BUDGET_EXHAUSTED_METRIC)))
+                    .build());
+            HttpUtils budgetedHttpUtils = new HttpUtils(new ObjectMapper(), retry, null, HttpClient.newHttpClient(),
+                    1000, meterRegistry, retryBudget, RequestHedger.disabled());
+            String url = "http://localhost:" + server.getAddress().getPort() + "/unavailable";
+
+            Assertions.assertThrows(SupplyChainErrorException.class, () -> budgetedHttpUtils.executeGetRequest(url, ProductDTO.class));
+            Assert.assertEquals(2, calls.get());
+            Assert.assertEquals(1, meterRegistry.counter(HttpUtils.RETRY_BUDGET_EXHAUSTED_METRIC).count(), 0);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void slow_get_hedged() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{\"id\":\"123\",\"name\":\"Product\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        ScheduledExecutorService hedgingScheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            RequestHedger requestHedger = new RequestHedger(true, 0.95, Duration.ofMillis(50), RetryBudget.unlimited(),
+                    hedgingScheduler, meterRegistry);
+            HttpUtils hedgedHttpUtils = new HttpUtils(new ObjectMapper(), Retry.ofDefaults("test"), null,
+                    HttpClient.newHttpClient(), 5000, meterRegistry, RetryBudget.unlimited(), requestHedger);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/product";
+            long start = System.nanoTime();
+
+            ProductDTO product = hedgedHttpUtils.executeGetRequest(url, ProductDTO.class);
+
+            Assert.assertEquals("123", product.getId());
+            Assert.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+            Assert.assertEquals(1, meterRegistry.counter(RequestHedger.HEDGES_METRIC).count(), 0);
+        } finally {
+            server.stop(0);
+            hedgingScheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failure_deadline_already_expired() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        SupplyChainErrorException exception = Assertions.assertThrows(SupplyChainErrorException.class, () ->
+                httpUtils.executeDeleteRequest("http://localhost/product", ProductDTO.class, deadline));
+        Assert.assertEquals(HttpStatus.GATEWAY_TIMEOUT, exception.getHttpStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void async_request_fails_when_a_retry_throws_while_sending() {
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        HttpClient client = Mockito.mock(HttpClient.class);
+        Mockito.when(client.sendAsync(Mockito.any(HttpRequest.class), Mockito.any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Connection reset")))
+                .thenThrow(new IllegalStateException("Client closed"));
+        try {
+            Retry retry = Retry.of("test", RetryConfig.custom().maxAttempts(3).waitDuration(Duration.ofMillis(10)).build());
+            HttpUtils retryingHttpUtils = new HttpUtils(new ObjectMapper(), retry, retryScheduler, client, 1000,
+                    new SimpleMeterRegistry(), RetryBudget.unlimited(), RequestHedger.disabled());
+
+            CompletionException exception = Assertions.assertThrows(CompletionException.class,
+                    () -> retryingHttpUtils.executeDeleteRequestAsync("http://localhost/product", ProductDTO.class)
+                            .orTimeout(5, TimeUnit.SECONDS).join());
+            Assert.assertTrue(exception.getCause() instanceof IllegalStateException);
+        } finally {
+            retryScheduler.shutdown();
+        }
+    }
+
+    private InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
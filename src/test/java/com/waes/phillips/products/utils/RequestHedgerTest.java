@@ -0,0 +1,108 @@
+package com.waes.phillips.products.utils;
+
+import com.waes.phillips.products.exception.SupplyChainErrorException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class RequestHedgerTest {
+
+    private ScheduledExecutorService scheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private List<CompletableFuture<String>> attempts;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        meterRegistry = new SimpleMeterRegistry();
+        attempts = new CopyOnWriteArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private RequestHedger hedger(RetryBudget budget) {
+        return new RequestHedger(true, 0.95, Duration.ofMillis(20), budget, scheduler, meterRegistry);
+    }
+
+    private CompletableFuture<String> attempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private void awaitAttempts(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && attempts.size() < count; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assert.assertEquals(count, attempts.size());
+    }
+
+    @Test
+    public void slow_attempt_hedged_and_first_answer_wins() throws InterruptedException {
+        CompletableFuture<String> result = hedger(RetryBudget.unlimited()).execute(this::attempt);
+
+        awaitAttempts(2);
+        attempts.get(1).complete("hedge");
+
+        Assert.assertEquals("hedge", result.join());
+        Assert.assertTrue(attempts.get(0).isCancelled());
+        Assert.assertEquals(1, meterRegistry.counter(RequestHedger.HEDGES_METRIC).count(), 0);
+        Assert.assertEquals(1, meterRegistry.counter(RequestHedger.HEDGES_WON_METRIC).count(), 0);
+    }
+
+    @Test
+    public void failed_attempt_waits_for_hedge() throws InterruptedException {
+        CompletableFuture<String> result = hedger(RetryBudget.unlimited()).execute(this::attempt);
+
+        awaitAttempts(2);
+        attempts.get(0).completeExceptionally(new SupplyChainErrorException("Failed to access resource"));
+        Assert.assertFalse(result.isDone());
+        attempts.get(1).complete("hedge");
+
+        Assert.assertEquals("hedge", result.join());
+    }
+
+    @Test
+    public void failure_before_delay_not_hedged() throws InterruptedException {
+        CompletableFuture<String> result = hedger(RetryBudget.unlimited()).execute(this::attempt);
+        attempts.get(0).completeExceptionally(new SupplyChainErrorException("Failed to access resource"));
+
+        CompletionException exception = Assertions.assertThrows(CompletionException.class, result::join);
+        Assert.assertTrue(exception.getCause() instanceof SupplyChainErrorException);
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertEquals(1, attempts.size());
+    }
+
+    @Test
+    public void hedges_limited_by_budget() throws InterruptedException {
+        CompletableFuture<String> result = hedger(new RetryBudget(0, 0, 1)).execute(this::attempt);
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertEquals(1, attempts.size());
+        attempts.get(0).complete("first");
+        Assert.assertEquals("first", result.join());
+        Assert.assertEquals(0, meterRegistry.counter(RequestHedger.HEDGES_METRIC).count(), 0);
+    }
+
+    @Test
+    public void disabled_sends_single_attempt() {
+        CompletableFuture<String> result = RequestHedger.disabled().execute(this::attempt);
+
+        Assert.assertSame(attempts.get(0), result);
+    }
+}
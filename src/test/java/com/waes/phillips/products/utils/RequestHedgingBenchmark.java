@@ -0,0 +1,96 @@
+package com.waes.phillips.products.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.waes.phillips.products.model.ProductDTO;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of GETs with and without hedging against a local stub with a long tail: most answers take
+ * {@code fastMillis}, {@code tailPercent} of them take {@code tailMillis}. Not run by the build, start it with
+ * {@code main [requests] [concurrency] [fastMillis] [tailMillis] [tailPercent]}.
+ */
+public class RequestHedgingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long fastMillis = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        long tailMillis = args.length > 3 ? Long.parseLong(args[3]) : 500;
+        int tailPercent = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        HttpServer server = stub(fastMillis, tailMillis, tailPercent);
+        String url = "http://localhost:" + server.getAddress().getPort() + "/product";
+        try {
+            run("no hedging", RequestHedger.disabled(), url, requests, concurrency);
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            RequestHedger requestHedger = new RequestHedger(true, 0.95, Duration.ofMillis(fastMillis),
+                    new RetryBudget(0.05, 0, 10), scheduler, meterRegistry);
+            run("hedging", requestHedger, url, requests, concurrency);
+            System.out.printf("hedges sent %.0f, won %.0f%n", meterRegistry.counter(RequestHedger.HEDGES_METRIC).count(),
+                    meterRegistry.counter(RequestHedger.HEDGES_WON_METRIC).count());
+            scheduler.shutdownNow();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void run(String name, RequestHedger requestHedger, String url, int requests, int concurrency) throws InterruptedException {
+        HttpUtils httpUtils = new HttpUtils(new ObjectMapper(), Retry.ofDefaults("benchmark"), null,
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), 10000, new SimpleMeterRegistry(),
+                RetryBudget.unlimited(), requestHedger);
+        for (int i = 0; i < 200; i++) {
+            httpUtils.executeGetRequest(url, ProductDTO.class);
+        }
+
+        long[] latencies = new long[requests];
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < requests; i++) {
+            int request = i;
+            workers.execute(() -> {
+                long start = System.nanoTime();
+                httpUtils.executeGetRequest(url, ProductDTO.class);
+                latencies[request] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: p50 %dms, p95 %dms, p99 %dms, p99.9 %dms%n", name, latencies[requests / 2],
+                latencies[requests * 95 / 100], latencies[requests * 99 / 100], latencies[requests * 999 / 1000]);
+    }
+
+    private static HttpServer stub(long fastMillis, long tailMillis, int tailPercent) throws IOException {
+        byte[] body = "{\"id\":\"123\",\"name\":\"Product\"}".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/product", exchange -> {
+            long delay = ThreadLocalRandom.current().nextInt(100) < tailPercent ? tailMillis : fastMillis;
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,84 @@
+package com.waes.phillips.products.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+public class RetryBudgetTest {
+
+    private long now = 100;
+
+    private RetryBudget budget(double ratio, int minRetriesPerSecond, int windowSeconds) {
+        return new RetryBudget(ratio, minRetriesPerSecond, windowSeconds) {
+            @Override
+            protected long currentSecond() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void retries_limited_to_ratio_of_requests() {
+        RetryBudget retryBudget = budget(0.1, 0, 10);
+        for (int i = 0; i < 20; i++) {
+            retryBudget.recordRequest();
+        }
+
+        Assert.assertTrue(retryBudget.canRetry());
+        retryBudget.recordRetry();
+        Assert.assertTrue(retryBudget.canRetry());
+        retryBudget.recordRetry();
+        Assert.assertFalse(retryBudget.canRetry());
+    }
+
+    @Test
+    public void minimum_retries_always_allowed() {
+        RetryBudget retryBudget = budget(0.1, 1, 2);
+
+        Assert.assertTrue(retryBudget.canRetry());
+        retryBudget.recordRetry();
+        retryBudget.recordRetry();
+        Assert.assertFalse(retryBudget.canRetry());
+    }
+
+    @Test
+    public void budget_recovers_when_window_slides() {
+        RetryBudget retryBudget = budget(0, 1, 2);
+        retryBudget.recordRetry();
+        now++;
+        retryBudget.recordRetry();
+        Assert.assertFalse(retryBudget.canRetry());
+
+        now++;
+        Assert.assertTrue(retryBudget.canRetry());
+        now += 5;
+        retryBudget.recordRetry();
+        Assert.assertTrue(retryBudget.canRetry());
+    }
+
+    @Test
+    public void limited_predicate_counts_refused_retries() {
+        RetryBudget retryBudget = budget(0, 1, 1);
+        Counter exhausted = new SimpleMeterRegistry().counter("exhausted");
+        Predicate<Throwable> retryable = retryBudget.limit(error -> error instanceof IllegalStateException, exhausted);
+
+        Assert.assertFalse(retryable.test(new IllegalArgumentException()));
+        Assert.assertTrue(retryable.test(new IllegalStateException()));
+        retryBudget.recordRetry();
+        Assert.assertFalse(retryable.test(new IllegalStateException()));
+        Assert.assertEquals(1, exhausted.count(), 0);
+    }
+
+    @Test
+    public void unlimited_never_refuses() {
+        RetryBudget retryBudget = RetryBudget.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            retryBudget.recordRetry();
+        }
+
+        Assert.assertTrue(retryBudget.canRetry());
+    }
+}
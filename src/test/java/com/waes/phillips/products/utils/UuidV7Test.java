@@ -0,0 +1,42 @@
+package com.waes.phillips.products.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class UuidV7Test {
+
+    @Test
+    public void version_variant_and_time_encoded() {
+        long now = System.currentTimeMillis();
+        UUID uuid = UuidV7.next();
+
+        Assert.assertEquals(7, uuid.version());
+        Assert.assertEquals(2, uuid.variant());
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        Assert.assertTrue(millis >= now && millis <= now + 1000);
+    }
+
+    @Test
+    public void ids_increase_as_strings() {
+        String previous = UuidV7.next().toString();
+        for (int i = 0; i < 10000; i++) {
+            String next = UuidV7.next().toString();
+            Assert.assertTrue(previous + " < " + next, previous.compareTo(next) < 0);
+            previous = next;
+        }
+    }
+
+    @Test
+    public void ids_increase_within_the_same_millisecond_and_when_the_clock_goes_back() {
+        long millis = System.currentTimeMillis();
+        UUID first = UuidV7.next(millis);
+        UUID second = UuidV7.next(millis);
+        UUID third = UuidV7.next(millis - 10);
+
+        Assert.assertTrue(first.toString().compareTo(second.toString()) < 0);
+        Assert.assertTrue(second.toString().compareTo(third.toString()) < 0);
+        Assert.assertTrue((third.getMostSignificantBits() >>> 16) >= millis);
+    }
+}